@@ -6,8 +6,11 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -16,17 +19,34 @@ import com.jackleg.EventFinding.EfUtility.Quantiles;
 public class Author {
 	private String name;
 	private ArrayList<ImageEntity> images;
+	private ImageColumns columns;
+	private boolean columnsLocalInfoStale;
 	private ArrayList<LocalCluster> localClusters;
 	private ArrayList<Integer> hometownIds;
-	private HashSet<String> hometownCountries;
-	private HashSet<String> hometownCities;
-	private double[][] distanceMatrix;
+	private BitSet hometownCountries; // hometown 나라들의 code (StringDictionary.getGlobal())
+	private BitSet hometownCities;    // hometown 도시(첫번째 address component)들의 code
+	private DistanceMatrix distanceMatrix;
+	private KdTree spatialIndex;
+	private int[][] neighborLists;
+	private ForkJoinPool authorClusteringPool; // 이 사용자의 클러스터링에만 사용할 ForkJoinPool. null이면 clusteringPool을 사용한다.
 
 	private ArrayList<EventCluster> eventCandidates;
 	private ArrayList<EventCluster> events;
 	
 	private int reverseGeoApiCallCount = 0;
 	
+	// 사용자 한 명의 이웃 검색 자료구조에 사용할 메모리 한도. (byte)
+	// distance matrix의 추정 크기가 이보다 크면 O(n) 메모리의 KdTree를 사용하며, 병렬로 미리 구하는 이웃 리스트도 이 한도 안에서만 저장한다.
+	private static volatile long memoryBudget = 64L * 1024 * 1024;
+	
+	// distance matrix, K-distance, 이웃 리스트를 구할 때 사용할 ForkJoinPool. null이면 한 스레드에서 순서대로 계산한다.
+	private static volatile ForkJoinPool clusteringPool = null;
+	
+	// 위치 정보가 있는 이미지가 이보다 많으면 K-distance quantile을 StreamingQuantiles로 근사한다. 기본값은 항상 정확한 값을 구하는 것.
+	private static volatile int approximateQuantileThreshold = Integer.MAX_VALUE;
+	private static final int KDISTANCE_CHUNK_SIZE = 64 * 1024;
+	
+	
 	// to do:
 	// combo 방식에서 이벤트 후보들을 저장하기 위한 리스트.
 	// 실제로는 Cluster 객체를 써야 하겠지만, 구조상의 문제로 우선 리스트로 구현.
@@ -41,16 +61,58 @@ public class Author {
 	public Author(String name) {
 		this.name              = name;
 		this.images            = null;
+		this.columns           = null;
+		this.columnsLocalInfoStale = false;
 		this.localClusters     = null;
 		this.hometownIds       = null;
 		this.hometownCountries = null;
 		this.hometownCities    = null;
 		this.distanceMatrix    = null;
+		this.spatialIndex      = null;
+		this.neighborLists     = null;
+		this.authorClusteringPool = null;
 		this.eventCandidates   = null;
 		this.events            = null;
 	}
 	
 	public void setReverseGeoApiCallCount(int count) { reverseGeoApiCallCount = count; }
+	public static void setMemoryBudget(long bytes) { memoryBudget = bytes; }
+	public static long getMemoryBudget() { return memoryBudget; }
+	public static void setApproximateQuantileThreshold(int count) { approximateQuantileThreshold = count; }
+	public static int getApproximateQuantileThreshold() { return approximateQuantileThreshold; }
+	
+	/**
+	 * 한 사용자의 클러스터링 작업(distance matrix, K-distance, 이웃 리스트)에 사용할 스레드 개수를 지정한다.
+	 * @param parallelism 스레드 개수. 1 이하이면 병렬 처리하지 않는다.
+	 */
+	public static synchronized void setClusteringParallelism(int parallelism) {
+		if(clusteringPool != null) clusteringPool.shutdown();
+		
+		if(parallelism > 1) clusteringPool = new ForkJoinPool(parallelism);
+		else                clusteringPool = null;
+	}
+	
+	/**
+	 * @return 클러스터링 작업에 사용하는 스레드 개수.
+	 */
+	public static int getClusteringParallelism() {
+		ForkJoinPool pool = clusteringPool;
+		return (pool == null) ? 1 : pool.getParallelism();
+	}
+	
+	/**
+	 * 이 사용자의 클러스터링 작업에만 사용할 ForkJoinPool을 지정한다. 큰 사용자만 병렬로 클러스터링할 때 사용한다. (AuthorPipeline 참고)
+	 * @param pool 사용할 ForkJoinPool. null이면 setClusteringParallelism()으로 지정한 pool을 사용한다.
+	 */
+	public void setClusteringPool(ForkJoinPool pool) { authorClusteringPool = pool; }
+	
+	/**
+	 * @return 이 사용자의 클러스터링 작업에 사용할 ForkJoinPool. null이면 한 스레드에서 순서대로 계산한다.
+	 */
+	private ForkJoinPool getClusteringPool() {
+		ForkJoinPool pool = authorClusteringPool;
+		return (pool != null) ? pool : clusteringPool;
+	}
 	
 	public ArrayList<Integer> getHometownIds() { return hometownIds; }
 	public ArrayList<LocalCluster> getLocalClusters() { return localClusters; }
@@ -63,35 +125,47 @@ public class Author {
 	}
 	
 	/**
-	 * 이 사용자에게 이미지를 추가.
+	 * 이 사용자에게 이미지를 추가. images는 시간순으로 유지된다.
+	 * 이진 검색으로 추가할 위치를 찾으며, 시각이 같은 이미지들 사이에서는 먼저 추가된 이미지가 앞에 온다.
+	 * 많은 이미지를 한꺼번에 추가할 때는 appendImage()로 추가한 후 한 번만 정렬하는 것이 빠르다.
 	 * @param image 추가할 이미지
 	 */
 	public void addImage(ImageEntity image) {
 		image.setAuthor(this);
+		invalidateColumns();
+		
+		if(this.images == null) this.images = new ArrayList<ImageEntity> ();
 		
-		if(this.images == null) {
-			this.images = new ArrayList<ImageEntity> ();
+		// 시간순으로 들어오는 경우가 대부분이므로, 마지막 이미지와 먼저 비교한다.
+		int size = this.images.size();
+		if(size == 0 || this.images.get(size-1).getTime() <= image.getTime()) {
 			this.images.add(image);
+			return;
 		}
-		else {
-			// first, last image를 따로 빼서 비교하는 것은 효율성 때문임. 아래의 검색 로직만 사용해도 문제 없음.
-			ImageEntity lastImage  = this.images.get(this.images.size()-1);
-			ImageEntity firstImage = this.images.get(0);
-			
-			if(lastImage.getDateTime().before(image.getDateTime()))      this.images.add(image);
-			else if(firstImage.getDateTime().after(image.getDateTime())) this.images.add(0, image);
-			else {
-				// 뒤에서부터 image보다 dateTime이 작은 최초의 index를 찾는다. (== beforeindex) image는 beforeindex 다음에 추가된다.
-				// 제일 뒤의 이미지는 이미 검사했으므로 넘어간다.
-				
-				for(int i=this.images.size()-2;i>=0;i--) {
-					if(this.images.get(i).getDateTime().before(image.getDateTime())) {
-						this.images.add(i+1, image);
-						break;
-					}
-				}
-			}
+		
+		// image보다 dateTime이 큰 최초의 index를 찾아 그 앞에 추가한다.
+		int low  = 0;
+		int high = size - 1;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(this.images.get(mid).getTime() <= image.getTime()) low  = mid + 1;
+			else                                                  high = mid;
 		}
+		this.images.add(low, image);
+	}
+	
+	/**
+	 * 이 사용자에게 이미지를 시간 순서와 관계없이 뒤에 추가한다.
+	 * 파일에서 이미지들을 한꺼번에 읽을 때 사용하며, 추가가 끝나면 sortImages(false)로 한 번 정렬해야 한다.
+	 * 정렬(Collections.sort)은 이미 정렬된 구간(run)을 찾아 병합하므로, 거의 시간순인 입력이라면 O(n)에 가깝다.
+	 * @param image 추가할 이미지
+	 */
+	public void appendImage(ImageEntity image) {
+		image.setAuthor(this);
+		invalidateColumns();
+		
+		if(this.images == null) this.images = new ArrayList<ImageEntity> ();
+		this.images.add(image);
 	}
 	
 	/**
@@ -101,6 +175,52 @@ public class Author {
 	public void sortImages(boolean reverse) {
 		Collections.sort(images);
 		if(reverse) Collections.reverse(images);
+		invalidateColumns();
+	}
+	
+	/**
+	 * images를 속성별 배열로 저장한 columnar store를 반환한다. 없다면 현재 images의 순서대로 새로 만든다.
+	 * images의 순서가 바뀌면 다시 만들어지므로, 시간순으로 정렬된 상태에서 사용해야 한다.
+	 * @return 이 사용자의 ImageColumns. 이미지가 없다면 null.
+	 */
+	public ImageColumns getColumns() {
+		if(images == null) return null;
+		
+		if(columns == null) {
+			columns = new ImageColumns(images);
+			columnsLocalInfoStale = false;
+		}
+		else if(columnsLocalInfoStale) {
+			columns.loadLocalInfo(images);
+			columnsLocalInfoStale = false;
+		}
+		
+		return columns;
+	}
+	
+	/**
+	 * 이미지가 추가되거나 순서가 바뀐 경우, columnar store와 이를 이용하는 이웃 검색 자료구조를 버린다.
+	 */
+	private void invalidateColumns() {
+		columns = null;
+		releaseNeighborSearch();
+	}
+	
+	/**
+	 * 이웃 검색에 사용한 distance matrix, KdTree, 이웃 리스트를 버린다. 다시 필요하면 prepareNeighborSearch()에서 새로 만든다.
+	 * distance matrix는 memoryBudget까지 커질 수 있으므로, 클러스터링이 끝난 후 사용자를 오래 가지고 있을 때 메모리를 줄이기 위해 사용한다.
+	 */
+	public void releaseNeighborSearch() {
+		distanceMatrix = null;
+		spatialIndex   = null;
+		neighborLists  = null;
+	}
+	
+	/**
+	 * ImageEntity의 나라, 주소 정보를 직접 바꾼 경우 호출한다. 다음 getColumns() 호출에서 columnar store의 위치 정보를 다시 읽는다.
+	 */
+	public void invalidateLocalInfo() {
+		columnsLocalInfoStale = true;
 	}
 	
 	/**
@@ -116,90 +236,183 @@ public class Author {
 	 */
 	public int getGeoImagesCount() {
 		if(images == null) return 0;
-		
-		int count = 0;		
-		for (ImageEntity image : images) {
-			if(image.getPoint() != null) count++;
-		}
-		
-		return count;
+		return getColumns().getGeoCount();
 	}
 
 	/**
-	 * 이미지들 사이의 거리를 얻기 위한 distance matrix를 구한다.
+	 * 이웃 검색에 사용할 자료구조를 준비한다.
+	 * 위치 정보가 있는 이미지들의 distance matrix 추정 크기가 memoryBudget 이하라면 distance matrix를, 그렇지 않으면 KdTree를 만든다.
 	 */
-	private void makeDistanceMatrix() {
-		// 2차원 배열을 초기화
-		distanceMatrix = new double[images.size()][];
-		for(int i=0; i<distanceMatrix.length; i++) {
-			distanceMatrix[i] = new double[images.size()];
-			Arrays.fill(distanceMatrix[i], 0.0);
-		}
+	private void prepareNeighborSearch() {
+		if(distanceMatrix != null || spatialIndex != null) return;
 		
-		for(int i=0;i<images.size();i++) {
-			for(int j=i+1; j<images.size(); j++) { // [i][i]는 무조건 0.0, diagonal 한 쪽만 계산. 반대쪽은 같은 값을 준다.
-				distanceMatrix[i][j] = distanceMatrix[j][i] = EfUtility.distance(images.get(i).getPoint(), images.get(j).getPoint());
-			}
-		}
+		// 위치 정보가 없는 이미지의 좌표는 NaN이므로 distance matrix, KdTree에서 제외된다.
+		ImageColumns columns = getColumns();
+		int geoImagesCount   = columns.getGeoCount();
+		if(DistanceMatrix.canAllocate(geoImagesCount) && DistanceMatrix.estimateBytes(geoImagesCount) <= memoryBudget)
+			distanceMatrix = new DistanceMatrix(columns.getXs(), columns.getYs(), getClusteringPool());
+		else
+			spatialIndex = new KdTree(columns.getXs(), columns.getYs());
 	}
 	
 	/**
-	 * 모든 포인트에서 K-distance를 구해 리스트로 반환한다.
+	 * 모든 포인트에서 K-distance를 구해 배열로 반환한다.
+	 * 포인트마다 전체 거리를 정렬하지 않고, KdTree의 k-nearest 검색이나 distance matrix row에 대한 quickselect로 k번째 값만 구한다.
 	 * @param k K-distance에서 구할 K값.
-	 * @return K-distance 값들이 담겨 있는 리스트. K-distance를 구할 수 없다면 null.
+	 * @return K-distance 값들이 담겨 있는 배열. 순서는 이미지 순서이며, 위치 정보가 없는 이미지는 제외된다. K-distance를 구할 수 없다면 null.
 	 */
-	private ArrayList<Double> getKDistanceList(int k) {
+	private double[] getKDistances(int k) {
 		if(k>=getGeoImagesCount()) return null; // k값이 현재 가지고 있는 이미지의 개수보다 크거나 같다면 k-distance를 구할 수 없음.
 		
-		if(distanceMatrix == null) makeDistanceMatrix();
-		ArrayList<Double> distanceList = new ArrayList<Double>();
+		prepareNeighborSearch();
 		
-		for(int i=0;i<distanceMatrix.length;i++) {
-			double[] distances = Arrays.copyOf(distanceMatrix[i], distanceMatrix[i].length);
-			Arrays.sort(distances);
-			
-			// 정렬하고 나면 NaN이 뒤로 밀린다. 0, 1, 2, ..., NaN, NaN
-			// 즉, K번째 값이 NaN이면 이 포인트는 K-distance를 구할 수 없는 것.
-			// getGeoImagesCount() 체크 로직 때문에 이런 경우는 없는 것이 정상이나, 방어 코드.
-			if(Double.isNaN(distances[k])) continue;
-			distanceList.add(distances[k]);
+		double[] kDistances = new double[images.size()];
+		fillKDistances(k, 0, kDistances.length, kDistances);
+		
+		int count = 0;
+		for(double kDistance : kDistances) {
+			if(Double.isNaN(kDistance) == false) kDistances[count++] = kDistance;
+		}
+		return Arrays.copyOf(kDistances, count);
+	}
+	
+	/**
+	 * K-distance 값들의 quantile을 구한다.
+	 * 위치 정보가 있는 이미지가 approximateQuantileThreshold보다 많으면 K-distance를 배열 하나에 모두 담지 않고,
+	 * KDISTANCE_CHUNK_SIZE 개씩 구해 StreamingQuantiles에 넣어 근사값을 구한다.
+	 * @param k K-distance에서 구할 K값.
+	 * @return K-distance 값들의 quantile. K-distance를 구할 수 없다면 null.
+	 */
+	private Quantiles getKDistanceQuantiles(int k) {
+		if(getGeoImagesCount() <= approximateQuantileThreshold) {
+			double[] kDistances = getKDistances(k);
+			return (kDistances == null) ? null : EfUtility.calculateQuantiles(kDistances);
+		}
+		
+		if(k>=getGeoImagesCount()) return null;
+		
+		prepareNeighborSearch();
+		
+		StreamingQuantiles quantiles = new StreamingQuantiles();
+		double[] chunk = new double[Math.min(KDISTANCE_CHUNK_SIZE, images.size())];
+		for(int from=0;from<images.size();from+=chunk.length) {
+			int to = Math.min(from + chunk.length, images.size());
+			fillKDistances(k, from, to, chunk);
+			for(int i=0;i<to-from;i++) quantiles.add(chunk[i]); // 위치 정보가 없는 이미지의 NaN은 StreamingQuantiles에서 무시된다.
 		}
-		return distanceList;
+		
+		return quantiles.getQuantiles();
+	}
+	
+	/**
+	 * [from, to) 구간 이미지들의 K-distance를 구해 buffer[0, to-from)에 채운다. 구할 수 없는 이미지(위치 정보가 없는 경우)는 NaN.
+	 * 포인트별로 독립적으로 계산하므로 구간으로 나누어 병렬로 구한다. prepareNeighborSearch()를 먼저 호출해야 한다.
+	 */
+	private void fillKDistances(final int k, final int from, int to, final double[] buffer) {
+		final int rowLength = images.size();
+		EfUtility.parallelFor(getClusteringPool(), from, to, 256, new EfUtility.RangeBody() {
+			@Override
+			public void run(int start, int end) {
+				if(spatialIndex != null) {
+					// KdTree는 자기 자신을 제외한 k번째 이웃을 찾는다. 정렬된 matrix row에서 자기 자신(0.0)이 0번째에 오는 것과 같은 결과.
+					double[] heap = new double[k];
+					for(int i=start;i<end;i++) buffer[i-from] = spatialIndex.kDistance(i, k, heap);
+					return;
+				}
+				
+				// distance matrix는 자기 자신과의 거리 0.0을 0번째로 세므로 k번째 값이 K-distance.
+				float[] row = new float[rowLength];
+				for(int i=start;i<end;i++) buffer[i-from] = distanceMatrix.kDistance(i, k, row);
+			}
+		});
 	}
 	
 	/**
-	 * 주어진 pointIndex와의 거리가 threshold보다 작은 point의 index들 (neighbors) 만 반환한다.
-	 * 즉, distanceMatrix[pointIndex][counterIndex] < threshold 인 counterIndex의 리스트.
+	 * 주어진 pointIndex와의 거리가 threshold보다 작은 point의 index들 (neighbors) 만 구해 neighbors에 채운다.
+	 * 즉, pointIndex와의 거리가 threshold보다 작은 counterIndex의 리스트. distance matrix, KdTree 어느 쪽을 사용해도 결과는 같다.
 	 * @param pointIndex 이웃을 구할 point index.
 	 * @param threshold 거리 threshold.
-	 * @return pointIndex의 이웃들의 index 리스트.
+	 * @param neighbors pointIndex의 이웃들의 index가 index 순으로 채워질 버퍼. 기존 내용은 지워진다.
+	 * @return 이웃의 개수.
 	 */
-	private ArrayList<Integer> getNeighborsIndex(int pointIndex, double threshold) {
-		if(distanceMatrix == null) makeDistanceMatrix();
+	private int getNeighborsIndex(int pointIndex, double threshold, IntList neighbors) {
+		prepareNeighborSearch();
 		
-		ArrayList<Integer> neighborsList = new ArrayList<Integer>();
-		for(int counterIndex = 0; counterIndex < distanceMatrix[pointIndex].length; counterIndex++) {
-			if((counterIndex != pointIndex) && (distanceMatrix[pointIndex][counterIndex] < threshold))
-				neighborsList.add(counterIndex);
+		if(neighborLists != null && neighborLists[pointIndex] != null) {
+			neighbors.clear();
+			for(int neighbor : neighborLists[pointIndex]) neighbors.add(neighbor);
+			return neighbors.size();
 		}
 		
-		return neighborsList;
+		return searchNeighbors(pointIndex, threshold, neighbors);
+	}
+	
+	/**
+	 * getNeighborsIndex()에서 실제 검색을 수행한다. 멤버를 변경하지 않으므로 여러 스레드에서 동시에 호출할 수 있다.
+	 */
+	private int searchNeighbors(int pointIndex, double threshold, IntList neighbors) {
+		neighbors.clear();
+		if(spatialIndex != null) {
+			// 클러스터 확장 순서가 distance matrix를 사용할 때와 같도록 index 순으로 정렬한다.
+			spatialIndex.searchRadius(pointIndex, threshold, neighbors);
+			neighbors.sort();
+			return neighbors.size();
+		}
+		
+		distanceMatrix.searchRadius(pointIndex, threshold, neighbors);
+		return neighbors.size();
+	}
+	
+	/**
+	 * 모든 포인트의 이웃 리스트를 병렬로 미리 구해 둔다. 병렬 처리를 사용하지 않는다면 아무것도 하지 않는다.
+	 * 미리 구한 이웃 리스트의 크기가 memoryBudget을 넘으면 나머지 포인트는 저장하지 않고, 클러스터링 중에 검색하도록 둔다.
+	 * @param threshold 거리 threshold.
+	 */
+	private void prepareNeighborLists(final double threshold) {
+		final ForkJoinPool pool = getClusteringPool();
+		if(pool == null) return;
+		
+		prepareNeighborSearch();
+		
+		final int[][] lists      = new int[images.size()][];
+		final AtomicLong entries = new AtomicLong(0);
+		final long maxEntries    = memoryBudget / 4;
+		EfUtility.parallelFor(pool, 0, lists.length, 64, new EfUtility.RangeBody() {
+			@Override
+			public void run(int from, int to) {
+				IntList neighbors = new IntList();
+				for(int i=from;i<to;i++) {
+					int count = searchNeighbors(i, threshold, neighbors);
+					if(entries.addAndGet(count) > maxEntries) return;
+					
+					int[] list = new int[count];
+					for(int j=0;j<count;j++) list[j] = neighbors.get(j);
+					lists[i] = list;
+				}
+			}
+		});
+		
+		neighborLists = lists;
 	}
 
 	/**
 	 * DBSCAN 기반으로 클러스터링 후 hometown을 찾는다. distanceThreshold는 내부적으로 distance 통계치를 이용한다. 
+	 * 이후 단계에서는 이웃 검색이 필요 없으므로, 끝나면 이웃 검색 자료구조를 버린다. (releaseNeighborSearch 참고)
 	 * @param densityThreshold DBSCAN에서 사용할 밀도 threshold. 클러스터가 가져야 할 최소의 원소 개수.
 	 * @return 생성된 클러스터의 리스트.
 	 */
 	public ArrayList<LocalCluster> doLocalClustering(double densityThreshold) {
-		ArrayList<Double> dl = getKDistanceList((int)densityThreshold);
-		if(dl == null) return null;
+		Quantiles quantiles = getKDistanceQuantiles((int)densityThreshold);
+		if(quantiles == null) {
+			releaseNeighborSearch();
+			return null;
+		}
 		
-		Quantiles quantiles = EfUtility.calculateQuantiles(dl.toArray(new Double[0]));
 		// to do.
 		// doDBSCANClustering 내부에서 localClusters에 직접 셋틍하고 있는데,
 		// 클러스터링과 멤버 세팅을 분리할 필요가 있을 수 있음. 고려해 볼 것.
 		int clustersCount   = doDBSCANClustering(quantiles.q3, densityThreshold);
+		releaseNeighborSearch();
 		
 		if(clustersCount == 0) return null;
 		else {
@@ -226,39 +439,61 @@ public class Author {
 	 * @return 생성된 클러스터 개수.
 	 */
 	public int doPDBSCANClustering(double distanceThreshold, double densityThreshold, double addt) {
-		if(distanceMatrix == null) makeDistanceMatrix();
+		prepareNeighborSearch();
+		prepareNeighborLists(distanceThreshold);
 		
 		localClusters = new ArrayList<LocalCluster>();
 		int cid  = 1;
 		
+		// 이미지가 클러스터에 속해 있는지는 ImageEntity 대신 columnar store의 cluster id로 확인한다.
+		ImageColumns columns = getColumns();
+		
+		// 클러스터 확장에 사용하는 queue. 한 클러스터를 확장하는 동안 각 index는 최대 한 번만 queue에 들어가므로 이미지 개수만큼이면 충분하다.
+		// inQueue는 현재 queue에 들어가 있는 index를 표시하며, queue에서 꺼낼 때 해제한다.
+		int[] queue       = new int[getImagesCount()];
+		boolean[] inQueue = new boolean[getImagesCount()];
+		IntList neighbors = new IntList();
+		
 		for(int currentIndex=0;currentIndex<getImagesCount();currentIndex++) {
-			if(images.get(currentIndex).isInLocalCluster()) continue;
+			if(columns.getClusterId(currentIndex) != ImageColumns.NO_CLUSTER) continue;
 			
-			ArrayList<Integer> neighborsIndex = getNeighborsIndex(currentIndex, distanceThreshold);
-			if(neighborsIndex.size() < densityThreshold) continue;
+			int neighborsCount = getNeighborsIndex(currentIndex, distanceThreshold, neighbors);
+			if(neighborsCount < densityThreshold) continue;
 			
 			// 충분한 개수의 이웃이 있다면, 새로운 클러스터의 시작
 			LocalCluster cluster = new LocalCluster(cid, this);
 			cluster.addImage(images.get(currentIndex));
-			double currentDensity = neighborsIndex.size();
+			columns.setClusterId(currentIndex, cid);
+			double currentDensity = neighborsCount;
+			
+			int head = 0;
+			int tail = 0;
+			for(int i=0;i<neighborsCount;i++) {
+				queue[tail++] = neighbors.get(i);
+				inQueue[neighbors.get(i)] = true;
+			}
 			
-			while(neighborsIndex.size() != 0) {
-				int nIndex = neighborsIndex.remove(0);
-				if(images.get(nIndex).isInLocalCluster()) continue;
+			while(head < tail) {
+				int nIndex = queue[head++];
+				inQueue[nIndex] = false;
+				if(columns.getClusterId(nIndex) != ImageColumns.NO_CLUSTER) continue;
 				cluster.addImage(images.get(nIndex));
+				columns.setClusterId(nIndex, cid);
 				
-				ArrayList<Integer> nIndexNeighbors = getNeighborsIndex(nIndex, distanceThreshold);
-				if(nIndexNeighbors.size() >= densityThreshold) {
+				int nIndexNeighborsCount = getNeighborsIndex(nIndex, distanceThreshold, neighbors);
+				if(nIndexNeighborsCount >= densityThreshold) {
 					// P-DBSCAN의 addt setting이 설정된 경우, 밀도 체크.
-					if(addt > 0.0 && nIndexNeighbors.size()/currentDensity < addt) continue;
-					currentDensity = nIndexNeighbors.size();
+					if(addt > 0.0 && nIndexNeighborsCount/currentDensity < addt) continue;
+					currentDensity = nIndexNeighborsCount;
 					
-					// 이미 neighbors에 들어가 있거나, 클러스터에 속한 인덱스는 제외하고 추가한다.
-					for (Integer nIndexNeighbor : nIndexNeighbors) {
-						if(neighborsIndex.contains(nIndexNeighbor)) continue;
-						if(images.get(nIndexNeighbor).isInLocalCluster()) continue;
+					// 이미 queue에 들어가 있거나, 클러스터에 속한 인덱스는 제외하고 추가한다.
+					for(int i=0;i<nIndexNeighborsCount;i++) {
+						int nIndexNeighbor = neighbors.get(i);
+						if(inQueue[nIndexNeighbor]) continue;
+						if(columns.getClusterId(nIndexNeighbor) != ImageColumns.NO_CLUSTER) continue;
 
-						neighborsIndex.add(nIndexNeighbor);						
+						queue[tail++] = nIndexNeighbor;
+						inQueue[nIndexNeighbor] = true;
 					}
 				}
 			}
@@ -269,6 +504,7 @@ public class Author {
 			cid++;
 		}
 		
+		neighborLists = null; // 미리 구한 이웃 리스트는 이번 threshold에서만 유효하다.
 		return localClusters.size();
 	}
 	
@@ -329,9 +565,9 @@ public class Author {
 	private void findHometownByQuantile() {
 		if(localClusters == null || localClusters.size() <= 4) return;
 		
-		ArrayList<Double> photoDays = new ArrayList<Double>();
-		for(LocalCluster cluster : localClusters) photoDays.add((double)cluster.calculatePhotoDaysCount());
-		double upperFence = EfUtility.calculateUpperFence(photoDays.toArray(new Double[0]));
+		double[] photoDays = new double[localClusters.size()];
+		for(int i=0;i<photoDays.length;i++) photoDays[i] = localClusters.get(i).calculatePhotoDaysCount();
+		double upperFence = EfUtility.calculateUpperFence(photoDays);
 		
 		ArrayList<Integer> resultList = new ArrayList<Integer>();
 		for(LocalCluster cluster : localClusters) {
@@ -399,87 +635,113 @@ public class Author {
 	
 	/**
 	 * hometown 클러스터들의 나라 정보를 반환한다.
-	 * @return hometown 클러스터들의 나라 정보. 없으면 null.
+	 * @return hometown 클러스터들의 나라 정보의 code set. 없으면 null.
 	 */
-	private HashSet<String> getHometownCountries() {
+	private BitSet getHometownCountries() {
 		if(hometownIds == null || hometownIds.size() == 0) return null;
 		
-		HashSet<String> resultSet = new HashSet<String>();
+		BitSet resultSet = new BitSet();
 		for(LocalCluster cluster : localClusters) {
 			if(cluster.isHometown()) {
 				for(ImageEntity image : cluster.getImages()) {
-					if(image.getCountry() != null) resultSet.add(image.getCountry());
+					if(image.getCountryCode() != StringDictionary.NONE) resultSet.set(image.getCountryCode());
 				}
 			}
 		}
 		
-		if (resultSet.size() == 0) return null;
+		if (resultSet.isEmpty()) return null;
 		return resultSet;
 	}
 
 	/**
 	 * hometown 클러스터들 1단계 address components를 반환한다.
-	 * @return hometown 클러스터들의 첫번째 address component의 set. 없으면 null.
+	 * @return hometown 클러스터들의 첫번째 address component의 code set. 없으면 null.
 	 */
-	private HashSet<String> getHometownFirstAcs() {
+	private BitSet getHometownFirstAcs() {
 		if(hometownIds == null || hometownIds.size() == 0) return null;
 		
-		HashSet<String> resultSet = new HashSet<String>();
+		BitSet resultSet = new BitSet();
 		for(LocalCluster cluster : localClusters) {
 			if(cluster.isHometown()) {
 				for(ImageEntity image : cluster.getImages()) {
-					String[] acArray = image.getAddressComponents();
-					if(acArray != null && acArray[0] != null) resultSet.add(acArray[0]);
+					int acFirst = image.getAddressComponentCode(0);
+					if(acFirst != StringDictionary.NONE) resultSet.set(acFirst);
 				}
 			}
 		}
 		
-		if(resultSet.size() == 0) return null;
+		if(resultSet.isEmpty()) return null;
 		return resultSet;
 	}
 	
+	/**
+	 * code set을 문자열 set으로 바꾼다. 결과 출력용.
+	 */
+	private static HashSet<String> decodeSet(BitSet codes) {
+		HashSet<String> resultSet = new HashSet<String>();
+		for(int code=codes.nextSetBit(0);code>=0;code=codes.nextSetBit(code+1)) resultSet.add(StringDictionary.getGlobal().decode(code));
+		return resultSet;
+	}
+	
+	/**
+	 * 정방향으로 위치 정보를 전파한 후, 역방향으로 다시 전파한다. propagateLocalInfo(false), propagateLocalInfo(true)를 차례로 호출한 것과 같다.
+	 * images는 이미 시간순으로 정렬되어 있으므로 정렬하지 않고 index 순서대로 양방향으로 훑는다.
+	 */
+	public void propagateLocalInfo() {
+		propagateLocalInfo(false);
+		propagateLocalInfo(true);
+	}
+	
 	/**
 	 * 사진들의 위치 정보를 전파.
 	 * 사진들을 시간순으로 정렬해 (p1, p2) 순서가 되었을 때 p1은 local cluster 정보가 있고, p2는 local cluster 정보가 없는 경우
 	 * 두 이미지의 시간 차이가 30분 이내라면 p1의  주소 정보를 p2에 복사하고, p2를 p1이 속한 local cluster에 추가한다.
 	 * 또한, 두 이미지의 시간 차이가 24시간 이내라면 p1의 나라 정보를 p2로 복사한다.
-	 * @param reverse 사진을 시간순으로 정렬할 때, reverse값이 true이면 역순으로 정렬한다.
+	 * @param reverse 값이 true이면 사진들을 시간의 역순으로 훑으며 전파한다.
 	 */
 	public void propagateLocalInfo(boolean reverse) {
 		// to do: 나라 정보를 복사하는 것 외에는 큰 의미 없음. (실제로 이벤트 detection에 영향을 주는 것은 나라 정보 복사 뿐) 의도의 확인이 필요함. 
 		if(images == null || localClusters == null || images.size() <= 1) return; // 이미지가 없거나, 클러스터링이 아직 수행되지 않았거나, 이미지가 1장 뿐이라면 종료
 		
-		sortImages(reverse);
+		// images는 이미 시간순으로 정렬되어 있으므로, 다시 정렬하지 않고 columnar store를 index 순으로(reverse이면 역순으로) 훑는다.
+		// 조건은 배열의 값으로 판단하고, 바뀐 정보는 배열과 ImageEntity에 함께 반영한다.
+		ImageColumns columns = getColumns();
+		int step = reverse ? -1 : 1;
 
 		// to do: 이런 로직이라면 p1, p2, p3, p4... 가 있을 때 p1에만 위치 정보가 있고, p2, p3, p4...가 모두 30분 이내 간격을 가지고 있을 때, 모두 p1과 동일한 위치 정보를 갖게 된다.
 		// 이것의 부작용은 심하지 않은가? 확인이 필요함.
 		// 안전하게 하려면 p1에만 위치정보가 있다면 p1과 30분 이내인 이미지로만 위치를 전파시킨다거나 하는 식.
 		// 하지만 클러스터에서 대표 포인트만 역지오코딩을 호출한다고 하면... 더 적극적으로 전파할 필요도 있음.
-		ImageEntity prevImage = images.get(0);
-		for(int i=1;i<images.size();i++) {
-			ImageEntity currImage = images.get(i);
+		int prev = reverse ? columns.size()-1 : 0;
+		for(int i=1;i<columns.size();i++) {
+			int curr = prev + step;
+			long timeDiffInSec = EfUtility.calculateTimeDiffInSec(columns.getTime(prev), columns.getTime(curr));
 			
 			// 주소 정보 및 클러스터 추가 여부 확인
-			if(prevImage.isInLocalCluster()
-				&& currImage.isInLocalCluster() == false
-				&& EfUtility.calculateTimeDiffInSec(prevImage, currImage) < EfUtility.MIN30_IN_SECONDS) {
+			if(columns.getClusterId(prev) != ImageColumns.NO_CLUSTER
+				&& columns.getClusterId(curr) == ImageColumns.NO_CLUSTER
+				&& timeDiffInSec < EfUtility.MIN30_IN_SECONDS) {
+				ImageEntity prevImage = images.get(prev);
+				ImageEntity currImage = images.get(curr);
+				
 				currImage.setFormattedAddres(prevImage.getFormattedAddress());
-				currImage.setAddressCompoments(prevImage.getAddressComponents());
-				prevImage.getLocalCluster().addImage(currImage);
+				currImage.copyAddressComponents(prevImage);
+				prevImage.getLocalCluster().insertImage(currImage); // 클러스터의 시간순 정렬을 유지한다.
+				
+				columns.copyAddress(prev, curr);
+				columns.setClusterId(curr, columns.getClusterId(prev));
 			}
 			
 			// 나라 정보 추가 여부 확인
-			if(prevImage.getCountry() != null
-				&& currImage.getCountry() == null
-				&& EfUtility.calculateTimeDiffInSec(prevImage, currImage) < EfUtility.DAY1_IN_SECONDS) {
-				currImage.setCountry(prevImage.getCountry());
+			if(columns.getCountry(prev) != StringDictionary.NONE
+				&& columns.getCountry(curr) == StringDictionary.NONE
+				&& timeDiffInSec < EfUtility.DAY1_IN_SECONDS) {
+				images.get(curr).setCountryCode(columns.getCountry(prev));
+				columns.setCountry(curr, columns.getCountry(prev));
 			}
 
-			prevImage = currImage;
+			prev = curr;
 		}
-		
-		// reverse로 작업했다면 다시 원래대로 돌려놓는다.
-		if(reverse) sortImages(false);
 	}
 	
 	/**
@@ -489,7 +751,8 @@ public class Author {
 	public boolean isAbroad(ImageEntity image) {
 		if(hometownCountries == null) return false;
 		
-		if(image.getCountry() != null && hometownCountries.contains(image.getCountry()) == false) return true;
+		int country = image.getCountryCode();
+		if(country != StringDictionary.NONE && hometownCountries.get(country) == false) return true;
 		return false;
 	}
 	
@@ -500,13 +763,16 @@ public class Author {
 	public boolean isOutOfHometownCity(ImageEntity image) {
 		if(hometownCities == null) return false;
 		
-		String[] imageAcs = image.getAddressComponents();
-		if(imageAcs != null && hometownCities.contains(imageAcs[0]) == false) return true;
+		// address component가 null이면 hometown city에 포함되지 않은 것으로 본다.
+		if(image.hasAddressComponents() == false) return false;
+		
+		int acFirst = image.getAddressComponentCode(0);
+		if(acFirst == StringDictionary.NONE || hometownCities.get(acFirst) == false) return true;
 		return false;
 	}
 	
 	/**
-	 * 이벤트 후보를 만들 대, prevImage와 currImage 사이를 끊어야 하는지 여부를 판단.
+	 * 이벤트 후보를 만들 대, prev번째 이미지와 curr번째 이미지 사이를 끊어야 하는지 여부를 판단. prev가 음수(첫 이미지)이면 분리하지 않는다.
 	 * 1. 두 이미지가 모두 해외(hometown이 아닌 나라)이고, 시간 간격이 36시간 이내라면 분리하지 않음.
 	 * 2. 둘 중 한개 이상이 홈타운 사진이고 두 사진이 3시간 간격 이상이면 분할.
 	 * 3. 두 이미지가 모두 hometown 이미지가 아닐 때,
@@ -520,27 +786,30 @@ public class Author {
 	 * 5. 분리하지 않음.
 	 * @return 분리해야 하면 true, 그렇지 않으면 false.
 	 */
-	private boolean splitHere(ImageEntity prevImage, ImageEntity currImage) {
-		if(prevImage == null || currImage == null) return false;
+	private boolean splitHere(SegmentationContext context, int prev, int curr) {
+		if(prev < 0) return false;
 		
-		long timeDiffInSec = EfUtility.calculateTimeDiffInSec(prevImage, currImage);
+		ImageColumns columns = context.columns;
+		long timeDiffInSec   = EfUtility.calculateTimeDiffInSec(columns.getTime(prev), columns.getTime(curr));
 		
-		if(isAbroad(prevImage) && isAbroad(currImage) && timeDiffInSec < 36 * EfUtility.HOUR1_IN_SECONDS) {
+		if(context.isAbroad(prev) && context.isAbroad(curr) && timeDiffInSec < 36 * EfUtility.HOUR1_IN_SECONDS) {
 			return false;
 		}
 		
-		if( (prevImage.isInHometown() || currImage.isInHometown())
+		boolean prevInHometown = context.isInHometown(prev);
+		boolean currInHometown = context.isInHometown(curr);
+		
+		if( (prevInHometown || currInHometown)
 			&& timeDiffInSec >= 3 * EfUtility.HOUR1_IN_SECONDS) {
 			return true;
 		}
 
-		if(prevImage.isInHometown() == false && currImage.isInHometown() == false) {
+		if(prevInHometown == false && currInHometown == false) {
 			//if(isOutOfHometownCity(prevImage) && isOutOfHometownCity(currImage)) {
-			LocalCluster prevCluster = prevImage.getLocalCluster();
-			LocalCluster currCluster = currImage.getLocalCluster();
+			int prevClusterId = columns.getClusterId(prev);
+			int currClusterId = columns.getClusterId(curr);
 			
-			if( (prevCluster != null && currCluster != null) &&
-					prevImage.getLocalCluster().getId() == currImage.getLocalCluster().getId()) {
+			if(prevClusterId != ImageColumns.NO_CLUSTER && prevClusterId == currClusterId) {
 				if(timeDiffInSec < 36 * EfUtility.HOUR1_IN_SECONDS) return false;
 				else return true;
 			}
@@ -557,6 +826,57 @@ public class Author {
 		return false;
 	}
 	
+	/**
+	 * 이벤트 후보 분할(splitHere)과 이벤트 판단에 사용할 이미지별 위치 flag.
+	 * hometown이 정해진 후 이미지마다 한 번씩만 해외, hometown city 외부, hometown 클러스터 여부를 구해 byte 배열에 bit로 저장해 둔다.
+	 * local cluster id는 columns의 배열을 그대로 사용한다.
+	 */
+	private class SegmentationContext {
+		private static final byte ABROAD               = 0x1; // isAbroad(ImageEntity)
+		private static final byte OUT_OF_HOMETOWN_CITY = 0x2; // isOutOfHometownCity(ImageEntity)
+		private static final byte IN_HOMETOWN          = 0x4; // isInHometown(ImageEntity)
+		
+		private ImageColumns columns;
+		private byte[] flags;
+		
+		private SegmentationContext(ImageColumns columns) {
+			this.columns = columns;
+			
+			// cluster id -> hometown 여부
+			int maxClusterId = 0;
+			if(localClusters != null) {
+				for(LocalCluster cluster : localClusters) maxClusterId = Math.max(maxClusterId, cluster.getId());
+			}
+			boolean[] hometownClusters = new boolean[maxClusterId + 1];
+			if(localClusters != null) {
+				for(LocalCluster cluster : localClusters) hometownClusters[cluster.getId()] = cluster.isHometown();
+			}
+			
+			flags = new byte[columns.size()];
+			for(int i=0;i<flags.length;i++) {
+				byte flag = 0;
+				
+				int clusterId = columns.getClusterId(i);
+				if(clusterId != ImageColumns.NO_CLUSTER && clusterId < hometownClusters.length && hometownClusters[clusterId]) flag |= IN_HOMETOWN;
+				
+				int country = columns.getCountry(i);
+				if(hometownCountries != null && country != StringDictionary.NONE && hometownCountries.get(country) == false) flag |= ABROAD;
+				
+				// address component가 null이면 hometown city에 포함되지 않은 것으로 본다.
+				if(hometownCities != null && columns.hasAddressComponents(i)) {
+					int acFirst = columns.getAddressComponent(i, 0);
+					if(acFirst == StringDictionary.NONE || hometownCities.get(acFirst) == false) flag |= OUT_OF_HOMETOWN_CITY;
+				}
+				
+				flags[i] = flag;
+			}
+		}
+		
+		private boolean isInHometown(int i)        { return (flags[i] & IN_HOMETOWN) != 0; }
+		private boolean isAbroad(int i)            { return (flags[i] & ABROAD) != 0; }
+		private boolean isOutOfHometownCity(int i) { return (flags[i] & OUT_OF_HOMETOWN_CITY) != 0; }
+	}
+	
 	/**
 	 * 사진 리스트들로부터 이벤트 후보 리스트를 생성한다. 여기에서 생성된 후보(이미지의 묶음) 중에서 실제 이벤트를 찾는다.
 	 */
@@ -570,9 +890,10 @@ public class Author {
 		EventCluster eventCandidate = new EventCluster(cid, this);
 		eventCandidates.add(eventCandidate);
 
-		ImageEntity prevImage = null;
-		for (ImageEntity currImage : images) {
-			if(splitHere(prevImage, currImage)) {
+		// 분할 여부는 columnar store의 배열로 판단하며, 이벤트 판단에 필요한 해외, hometown city 외부 여부도 이미지를 추가하면서 함께 넘긴다.
+		SegmentationContext context = new SegmentationContext(getColumns());
+		for(int curr=0;curr<images.size();curr++) {
+			if(splitHere(context, curr-1, curr)) {
 				// 현재 prevImage까지 들어가 있음.
 				// 새로운 클러스터를 만들고 리스트에 추가한다.
 				// to do. 클러스터 추가할 때 id 생성하는것도 wrapping할 필요가 있을 듯...
@@ -580,8 +901,7 @@ public class Author {
 				eventCandidate = new EventCluster(cid, this);
 				eventCandidates.add(eventCandidate);
 			}
-			eventCandidate.addImage(currImage);
-			prevImage = currImage;
+			eventCandidate.addImage(images.get(curr), context.isAbroad(curr), context.isOutOfHometownCity(curr));
 		}
 	}
 
@@ -619,7 +939,7 @@ public class Author {
 				
 				ImageEntity prevImage = getImage(index-1);
 				// 2. 바로 앞의 이미지가 hometown이 아니고, 같은 날짜라면 클러스터에 계속 추가됨
-				if(prevImage.isInHometown() == false && EfUtility.isSameDay(prevImage.getDateTime(), currImage.getDateTime())) event.addImage(currImage);
+				if(prevImage.isInHometown() == false && EfUtility.isSameDay(prevImage.getTime(), currImage.getTime())) event.addImage(currImage);
 				// 3. 바로 앞의 이미지가 hometown이며, 클러스터에 속해 있고, 나와 10분 이내라면 추가.
 				else if(prevImage.isInHometown() && event.contains(prevImage) && EfUtility.calculateTimeDiffInSec(prevImage, currImage)< EfUtility.MIN10_IN_SECONDS) event.addImage(currImage);
 				// 그 외의 경우는 클러스터에 속하지 않는 경우.
@@ -639,7 +959,7 @@ public class Author {
 				for(int beforeIndex = index-1; beforeIndex >= 0; beforeIndex--) {
 					ImageEntity image = getImage(beforeIndex);
 					
-					if(image.isInHometown() && EfUtility.isSameDay(image.getDateTime(), currImage.getDateTime())) {
+					if(image.isInHometown() && EfUtility.isSameDay(image.getTime(), currImage.getTime())) {
 						if(homeStartImage == null) homeStartImage = image;
 						
 						if(EfUtility.calculateTimeDiffInSec(homeStartImage, image) < EfUtility.MIN10_IN_SECONDS) event.addImage(image);
@@ -671,8 +991,8 @@ public class Author {
 		overviewWriter.write("<h1>"+name+"님의 의미있는 순간들</h1>");
 		
 		overviewWriter.write("<h3>사진: " + getImagesCount() +"장 | 위치 정보 있는 사진: " + getGeoImagesCount() + "장 | 역지오코딩 API 호출 회수: " + getReverseGeoApiCallCount() +"회</h3>");
-		if(hometownCountries != null) overviewWriter.write("<h3>hometown country</h3>" + StringUtils.join(hometownCountries.toArray(new String[0]), ", ") + "<br/>");
-		if(hometownCities != null) overviewWriter.write("<h3>hometown city</h3>" + StringUtils.join(hometownCities.toArray(new String[0]), ", ") + "<br/>");
+		if(hometownCountries != null) overviewWriter.write("<h3>hometown country</h3>" + StringUtils.join(decodeSet(hometownCountries).toArray(new String[0]), ", ") + "<br/>");
+		if(hometownCities != null) overviewWriter.write("<h3>hometown city</h3>" + StringUtils.join(decodeSet(hometownCities).toArray(new String[0]), ", ") + "<br/>");
 		
 		for(int i=eventCandidates.size()-1;i>=0;i--) {
 			EventCluster eventCandidate = eventCandidates.get(i);
@@ -697,14 +1017,18 @@ public class Author {
 			BufferedWriter subWriter = new BufferedWriter(new FileWriter(subFilename));
 			subWriter.write("<meta charset=\"utf-8\"/>\n");
 			
-			for(EventCluster subCluster : eventCandidate.splitEventCluster()) {
-				subWriter.write("<h4>" + subCluster.getRange() + " " + subCluster.getRepLocation() + " 찍은 사진 " + subCluster.getImagesCount() + " 장</h4>");
+			// sub 클러스터를 만들지 않고, 나눈 구간의 이미지들을 eventCandidate에서 바로 출력한다.
+			int[] bounds = eventCandidate.splitEventRanges();
+			for(int k=0;k<bounds.length-1;k++) {
+				int from = bounds[k];
+				int to   = bounds[k+1];
+				subWriter.write("<h4>" + eventCandidate.getRange(from, to) + " " + eventCandidate.getRepLocation(from, to) + " 찍은 사진 " + (to - from) + " 장</h4>");
 				
-				for(int l=0;l<subCluster.getImagesCount();l++) {
-					if(subCluster.getImage(l).isInHometown())
-						subWriter.write("<img src=" + subCluster.getImage(l).getUrl() + " height=100px border=\"10\" bordercolor=\"#FEABCD\"></img>");
+				for(int l=from;l<to;l++) {
+					if(eventCandidate.getImage(l).isInHometown())
+						subWriter.write("<img src=" + eventCandidate.getImage(l).getUrl() + " height=100px border=\"10\" bordercolor=\"#FEABCD\"></img>");
 					else
-						subWriter.write("<img src=" + subCluster.getImage(l).getUrl() + " height=100px></img>");
+						subWriter.write("<img src=" + eventCandidate.getImage(l).getUrl() + " height=100px></img>");
 				}
 				
 				subWriter.write("<hr>");
@@ -725,5 +1049,6 @@ public class Author {
 			image.setFormattedAddres(null);
 			image.setAddressCompoments(null);
 		}
+		if(columns != null) columns.clearLocalInfo();
 	}
 }
\ No newline at end of file
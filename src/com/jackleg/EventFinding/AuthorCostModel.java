@@ -0,0 +1,185 @@
+package com.jackleg.EventFinding;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 사용자 한 명의 클러스터링(EfDriver.clusterAuthor) 비용을 이미지 개수로 추정하는 모델.
+ * distance matrix와 K-distance는 위치 정보가 있는 이미지 개수의 제곱에 비례하므로, 비용은 다음과 같이 추정한다.
+ *   predicted = pairNanos * (geoImages^2 + IMAGE_WEIGHT * images)
+ * pairNanos는 병렬로 처리하지 않은 사용자들의 실제 시간으로 계속 보정한다. (least squares)
+ * AuthorPipeline은 이 값으로 큰 사용자부터 처리하고, largeAuthorNanos 이상인 사용자는 병렬로 클러스터링한다.
+ * 사용자별 추정 비용과 실제 비용은 report로 남긴다.
+ */
+public class AuthorCostModel {
+	private static final double IMAGE_WEIGHT = 64.0; // 이미지 하나를 읽고 정렬하는 비용. (거리 계산 하나 기준)
+
+	/**
+	 * 사용자 한 명의 추정 비용과 실제 비용.
+	 */
+	public static class Entry {
+		private String name;
+		private int images;
+		private int geoImages;
+		private double predictedNanos;
+		private long actualNanos;
+		private boolean parallel;
+
+		private Entry(String name, int images, int geoImages, double predictedNanos, long actualNanos, boolean parallel) {
+			this.name           = name;
+			this.images         = images;
+			this.geoImages      = geoImages;
+			this.predictedNanos = predictedNanos;
+			this.actualNanos    = actualNanos;
+			this.parallel       = parallel;
+		}
+
+		public String getName() { return name; }
+		public int getImages() { return images; }
+		public int getGeoImages() { return geoImages; }
+		public double getPredictedNanos() { return predictedNanos; }
+		public long getActualNanos() { return actualNanos; }
+		public boolean isParallel() { return parallel; }
+
+		/**
+		 * @return "user001: images 1234 (geo 1000), predicted 12.3ms, actual 10.1ms, parallel" 형태의 문자열
+		 */
+		public String toString() {
+			return name + ": images " + images + " (geo " + geoImages + ")"
+				+ ", predicted " + String.format("%.1f", predictedNanos / 1e6) + "ms"
+				+ ", actual " + String.format("%.1f", actualNanos / 1e6) + "ms"
+				+ (parallel ? ", parallel" : "");
+		}
+	}
+
+	private static final Comparator<Entry> ACTUAL_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry a, Entry b) {
+			return (a.actualNanos < b.actualNanos) ? -1 : ((a.actualNanos == b.actualNanos) ? 0 : 1);
+		}
+	};
+
+	private double pairNanos;
+	private double largeAuthorNanos;
+
+	// pairNanos 보정을 위한 합계. 병렬로 처리하지 않은 사용자들만 사용한다.
+	private double sumUnitsActual;
+	private double sumUnitsSquared;
+
+	private int authors;
+	private int parallelAuthors;
+	private double predictedTotal;
+	private long actualTotal;
+
+	private int reportLimit;
+	private PriorityQueue<Entry> slowest; // 실제 비용이 가장 큰 reportLimit명. (min heap)
+	private Writer reportWriter;
+
+	/**
+	 * constructor.
+	 * @param pairNanos 거리 계산 하나의 초기 추정 시간. (nanosecond) 실행 중에 보정된다.
+	 * @param largeAuthorNanos 추정 비용이 이 이상이면 병렬로 클러스터링할 사용자로 본다. (nanosecond)
+	 * @param reportLimit getReport()에 포함할, 실제 비용이 가장 큰 사용자 수.
+	 */
+	public AuthorCostModel(double pairNanos, double largeAuthorNanos, int reportLimit) {
+		this.pairNanos        = pairNanos;
+		this.largeAuthorNanos = largeAuthorNanos;
+		this.reportLimit      = Math.max(reportLimit, 0);
+		this.slowest          = new PriorityQueue<Entry>(Math.max(reportLimit, 1), ACTUAL_ORDER);
+		this.reportWriter     = null;
+	}
+
+	/**
+	 * 모든 사용자의 추정 비용과 실제 비용을 tab으로 구분해 출력할 Writer를 지정한다.
+	 * 형식: name, images, geoImages, predicted(ms), actual(ms), parallel(0/1)
+	 * @param writer 출력할 Writer. null이면 출력하지 않는다. 닫는 것은 호출하는 쪽에서 한다.
+	 */
+	public synchronized void setReportWriter(Writer writer) { this.reportWriter = writer; }
+
+	/**
+	 * @return author의 클러스터링 추정 비용. (nanosecond)
+	 */
+	public synchronized double predict(Author author) {
+		return pairNanos * units(author.getImagesCount(), author.getGeoImagesCount());
+	}
+
+	/**
+	 * @param predictedNanos predict()로 구한 추정 비용
+	 * @return 병렬로 클러스터링할 사용자라면 true
+	 */
+	public synchronized boolean isLarge(double predictedNanos) {
+		return predictedNanos >= largeAuthorNanos;
+	}
+
+	/**
+	 * 사용자의 실제 비용을 기록한다. 병렬로 처리하지 않은 사용자라면 pairNanos를 보정한다.
+	 * @param author 처리한 사용자
+	 * @param predictedNanos 처리하기 전에 predict()로 구한 추정 비용
+	 * @param actualNanos 실제로 걸린 시간
+	 * @param parallel 병렬로 클러스터링했다면 true
+	 * @throws IOException report를 출력할 수 없는 경우
+	 */
+	public synchronized void observe(Author author, double predictedNanos, long actualNanos, boolean parallel) throws IOException {
+		int images    = author.getImagesCount();
+		int geoImages = author.getGeoImagesCount();
+
+		authors++;
+		predictedTotal += predictedNanos;
+		actualTotal    += actualNanos;
+
+		if(parallel) parallelAuthors++;
+		else {
+			double units = units(images, geoImages);
+			sumUnitsActual  += units * actualNanos;
+			sumUnitsSquared += units * units;
+			if(sumUnitsSquared > 0) pairNanos = sumUnitsActual / sumUnitsSquared;
+		}
+
+		Entry entry = new Entry(author.getName(), images, geoImages, predictedNanos, actualNanos, parallel);
+		if(reportLimit > 0) {
+			slowest.add(entry);
+			if(slowest.size() > reportLimit) slowest.poll();
+		}
+		if(reportWriter != null) {
+			reportWriter.write(entry.name + "\t" + images + "\t" + geoImages + "\t"
+				+ String.format("%.3f", predictedNanos / 1e6) + "\t" + String.format("%.3f", actualNanos / 1e6) + "\t" + (parallel ? 1 : 0) + "\n");
+		}
+	}
+
+	/**
+	 * @return 지금까지 보정된 거리 계산 하나의 추정 시간. (nanosecond)
+	 */
+	public synchronized double getPairNanos() { return pairNanos; }
+
+	/**
+	 * @return 실제 비용이 가장 큰 사용자들. 비용이 큰 순서.
+	 */
+	public synchronized List<Entry> getSlowest() {
+		ArrayList<Entry> result = new ArrayList<Entry>(slowest);
+		Collections.sort(result, Collections.reverseOrder(ACTUAL_ORDER));
+		return result;
+	}
+
+	/**
+	 * @return "schedule "으로 시작하는 요약 한 줄과, 실제 비용이 가장 큰 사용자들의 한 줄씩의 통계
+	 */
+	public synchronized String getReport() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("schedule authors: ").append(authors)
+			.append(", parallel: ").append(parallelAuthors)
+			.append(", predicted ").append(String.format("%.1f", predictedTotal / 1e6)).append("ms")
+			.append(", actual ").append(String.format("%.1f", actualTotal / 1e6)).append("ms")
+			.append(", pair cost ").append(String.format("%.2f", pairNanos)).append("ns\n");
+		for(Entry entry : getSlowest()) sb.append("schedule ").append(entry).append("\n");
+		return sb.toString();
+	}
+
+	private static double units(int images, int geoImages) {
+		return (double)geoImages * geoImages + IMAGE_WEIGHT * images;
+	}
+}
@@ -0,0 +1,570 @@
+package com.jackleg.EventFinding;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 사용자들을 단계별 스레드 풀에서 처리하는 pipeline.
+ * load -> cluster -> geocode -> detect -> render -> output 순서로, 단계 사이는 크기가 정해진 queue로 연결된다.
+ * 1. load    : Source에서 사용자를 읽는다. (1 스레드)
+ * 2. cluster : EfDriver.clusterAuthor(). CPU 작업.
+ * 3. geocode : 여러 사용자를 모아 ClusterGeocoder로 reverse-geocoding 한다. I/O 작업.
+ * 4. detect  : EfDriver.detectAuthorEvents(). 위치 정보 전파와 이벤트 찾기. CPU 작업.
+ * 5. render  : EfDriver.renderAuthor(). 결과 파일 출력. I/O 작업.
+ * 6. output  : run()을 호출한 스레드에서 로그와 index를 읽은 순서대로 출력한다.
+ * 각 단계가 서로 다른 스레드에서 동시에 진행되므로 CPU 작업과 I/O 작업이 겹친다.
+ * queue가 가득 차면 앞 단계가 기다리고(backpressure), load부터 render까지 진행 중인 사용자 수도 maxInFlight로 제한되므로 메모리 사용량이 정해진다.
+ * 사용자는 클러스터링이 끝나면 이웃 검색 자료구조(distance matrix 등)를 버리고, render가 끝나면 이름과 로그만 남기고 pipeline에서 빠진다.
+ * 따라서 output 단계에서 앞선 사용자를 기다리는 사용자들은 메모리를 거의 사용하지 않는다.
+ * 단계별 queue 길이와 처리량은 getStageMetrics()로 얻을 수 있으며, 오래 걸리면 주기적으로 System.err에 출력한다.
+ * AuthorCostModel을 지정하면 cluster 단계는 큰 사용자부터 처리한다. (setCostModel() 참고)
+ */
+public class AuthorPipeline {
+	/**
+	 * pipeline에 사용자를 공급한다.
+	 */
+	public static interface Source {
+		/**
+		 * @return 다음 사용자. 더 이상 없으면 null.
+		 */
+		public Author next() throws IOException, ParseException;
+	}
+
+	/**
+	 * 출력 순서와 다른 순서로 사용자를 공급하는 Source. (e.g. 이미 읽은 사용자들을 큰 사용자부터)
+	 * output 단계는 getSequence()의 순서대로 출력하므로, sequence는 0부터 빠짐없이 한 번씩 나와야 한다.
+	 */
+	public static interface OrderedSource extends Source {
+		/**
+		 * @return 마지막으로 next()가 반환한 사용자의 출력 순서.
+		 */
+		public int getSequence();
+	}
+
+	/**
+	 * 단계별 처리 통계.
+	 */
+	public static class StageMetrics {
+		private String name;
+		private int workers;
+		private BlockingQueue<AuthorTask> queue; // 이 단계의 입력 queue. load 단계는 null.
+		private int capacity;
+
+		private AtomicLong processed = new AtomicLong(0);
+		private AtomicLong busyNanos = new AtomicLong(0);
+		private AtomicInteger maxDepth = new AtomicInteger(0);
+
+		private StageMetrics(String name, int workers, BlockingQueue<AuthorTask> queue, int capacity) {
+			this.name     = name;
+			this.workers  = workers;
+			this.queue    = queue;
+			this.capacity = capacity;
+		}
+
+		private void record(int count, long nanos) {
+			processed.addAndGet(count);
+			busyNanos.addAndGet(nanos);
+		}
+
+		private void observeDepth() {
+			int depth = getQueueDepth();
+			int max;
+			while(depth > (max = maxDepth.get()) && maxDepth.compareAndSet(max, depth) == false);
+		}
+
+		public String getName() { return name; }
+		public int getWorkers() { return workers; }
+		public long getProcessed() { return processed.get(); }
+		public long getBusyNanos() { return busyNanos.get(); }
+
+		/**
+		 * @return 입력 queue에서 기다리는 사용자 수
+		 */
+		public int getQueueDepth() { return (queue == null) ? 0 : queue.size(); }
+
+		/**
+		 * @return 지금까지 입력 queue의 최대 길이
+		 */
+		public int getMaxQueueDepth() { return maxDepth.get(); }
+
+		/**
+		 * @param elapsedNanos pipeline이 실행된 시간
+		 * @return "cluster: workers 4, processed 30, queue 0 (max 3/32), 12.3/s, busy 45%" 형태의 문자열
+		 */
+		public String toString(long elapsedNanos) {
+			double seconds = Math.max(elapsedNanos, 1) / 1e9;
+			double busy    = 100.0 * busyNanos.get() / ((double)Math.max(elapsedNanos, 1) * workers);
+
+			return name + ": workers " + workers
+				+ ", processed " + processed.get()
+				+ ((queue == null) ? "" : ", queue " + getQueueDepth() + " (max " + maxDepth.get() + "/" + capacity + ")")
+				+ ", " + String.format("%.1f", processed.get() / seconds) + "/s"
+				+ ", busy " + String.format("%.0f", busy) + "%";
+		}
+	}
+
+	/**
+	 * pipeline을 따라 전달되는 사용자 한 명의 작업.
+	 */
+	private static class AuthorTask {
+		private int sequence; // load 순서. output 단계에서 이 순서대로 출력한다.
+		private Author author; // render 단계가 끝나면 null. 이후에는 name과 log만 사용한다.
+		private String name;
+		private ArrayList<LocalCluster> clusters;
+		private String log;
+		private double predictedNanos; // AuthorCostModel로 추정한 클러스터링 비용
+
+		private AuthorTask(int sequence, Author author) {
+			this.sequence = sequence;
+			this.author   = author;
+			this.name     = (author == null) ? null : author.getName();
+		}
+	}
+
+	// 입력의 끝. 단계의 마지막 스레드가 끝나면 다음 단계로 전달한다.
+	private static final AuthorTask END = new AuthorTask(-1, null);
+
+	// 추정 비용이 큰 순서. 비용이 같으면 load 순서이며, END는 항상 마지막이다.
+	private static final Comparator<AuthorTask> LARGEST_FIRST = new Comparator<AuthorTask>() {
+		@Override
+		public int compare(AuthorTask a, AuthorTask b) {
+			if(a == END || b == END) return (a == b) ? 0 : ((a == END) ? 1 : -1);
+			if(a.predictedNanos != b.predictedNanos) return (a.predictedNanos > b.predictedNanos) ? -1 : 1;
+			return (a.sequence < b.sequence) ? -1 : ((a.sequence == b.sequence) ? 0 : 1);
+		}
+	};
+
+	private static final long PROGRESS_INTERVAL_NANO = 10L * 1000 * 1000 * 1000;
+	private static final long POLL_MILLIS            = 100;
+
+	private String outputdir;
+	private ReverseGeocoder geocoder;
+	private double geocodeCellSize;
+
+	private int clusterWorkers = 1;
+	private int geocodeWorkers = 1;
+	private int detectWorkers  = 1;
+	private int renderWorkers  = 1;
+	private int queueCapacity  = 32;
+	private int maxInFlight    = 128;
+	private int geocodeBatchSize     = 64; // geocode 단계에서 한 번에 모으는 최대 사용자 수
+	private long geocodeLingerMillis = 10; // geocode 단계에서 사용자를 더 모으기 위해 기다리는 시간
+	private boolean geocodeLabelCheck = false;
+	private AuthorCostModel costModel = null;
+
+	private ClusterGeocoder geocodeStatistics;
+	private ArrayList<StageMetrics> metrics;
+	private long startTime;
+	private long endTime;
+
+	private AtomicReference<Throwable> failure;
+	private CopyOnWriteArrayList<ExecutorService> pools; // fail()에서 다른 스레드가 읽는다.
+
+	/**
+	 * constructor. 단계별 스레드 수 등은 setter로 정한다.
+	 * @param outputdir 결과 파일을 출력할 디렉토리.
+	 * @param geocoder 클러스터들을 reverse-geocoding 할 ReverseGeocoder.
+	 * @param geocodeCellSize ClusterGeocoder의 격자 칸 크기.
+	 */
+	public AuthorPipeline(String outputdir, ReverseGeocoder geocoder, double geocodeCellSize) {
+		this.outputdir         = outputdir;
+		this.geocoder          = geocoder;
+		this.geocodeCellSize   = geocodeCellSize;
+		this.geocodeStatistics = new ClusterGeocoder(geocoder, geocodeCellSize);
+		this.metrics           = new ArrayList<StageMetrics>();
+	}
+
+	public void setClusterWorkers(int workers) { this.clusterWorkers = Math.max(workers, 1); }
+	public void setGeocodeWorkers(int workers) { this.geocodeWorkers = Math.max(workers, 1); }
+	public void setDetectWorkers(int workers) { this.detectWorkers = Math.max(workers, 1); }
+	public void setRenderWorkers(int workers) { this.renderWorkers = Math.max(workers, 1); }
+	public void setQueueCapacity(int capacity) { this.queueCapacity = Math.max(capacity, 1); }
+	public void setMaxInFlight(int maxInFlight) { this.maxInFlight = Math.max(maxInFlight, 1); }
+	public void setGeocodeBatchSize(int batchSize) { this.geocodeBatchSize = Math.max(batchSize, 1); }
+	public void setGeocodeLingerMillis(long millis) { this.geocodeLingerMillis = Math.max(millis, 0); }
+	public void setGeocodeLabelCheck(boolean labelCheck) { this.geocodeLabelCheck = labelCheck; } // ClusterGeocoder#setLabelCheck 참고
+
+	/**
+	 * cluster 단계에서 사용할 비용 모델을 지정한다.
+	 * 지정하면 cluster 단계는 진행 중인 사용자들(maxInFlight명) 중 추정 비용이 큰 사용자부터 ForkJoinPool에서 처리하고, 큰 사용자는 병렬로 클러스터링한다.
+	 * @param costModel 비용 모델. null이면 load 순서대로 처리한다.
+	 */
+	public void setCostModel(AuthorCostModel costModel) { this.costModel = costModel; }
+
+	/**
+	 * source의 모든 사용자를 처리한다. 로그는 System.err로, index는 indexWriter로 source의 순서(OrderedSource라면 getSequence()의 순서)대로 출력한다.
+	 * 어느 단계에서든 exception이 발생하면 모든 단계를 멈추고 그 exception을 던진다.
+	 * @param source 처리할 사용자들.
+	 * @param indexWriter index 파일.
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public void run(final Source source, Writer indexWriter) throws IOException, ParseException {
+		// cost model을 사용하면 cluster 단계의 queue는 추정 비용이 큰 순서이다. 크기는 maxInFlight로 제한된다.
+		final BlockingQueue<AuthorTask> clusterQueue = (costModel != null) ? new PriorityBlockingQueue<AuthorTask>(queueCapacity, LARGEST_FIRST) : new ArrayBlockingQueue<AuthorTask>(queueCapacity);
+		final BlockingQueue<AuthorTask> geocodeQueue = new ArrayBlockingQueue<AuthorTask>(queueCapacity);
+		final BlockingQueue<AuthorTask> detectQueue  = new ArrayBlockingQueue<AuthorTask>(queueCapacity);
+		final BlockingQueue<AuthorTask> renderQueue  = new ArrayBlockingQueue<AuthorTask>(queueCapacity);
+		final BlockingQueue<AuthorTask> outputQueue  = new ArrayBlockingQueue<AuthorTask>(queueCapacity);
+
+		final StageMetrics loadMetrics    = new StageMetrics("load", 1, null, 0);
+		final StageMetrics clusterMetrics = new StageMetrics("cluster", clusterWorkers, clusterQueue, (costModel != null) ? maxInFlight : queueCapacity);
+		final StageMetrics geocodeMetrics = new StageMetrics("geocode", geocodeWorkers, geocodeQueue, queueCapacity);
+		final StageMetrics detectMetrics  = new StageMetrics("detect", detectWorkers, detectQueue, queueCapacity);
+		final StageMetrics renderMetrics  = new StageMetrics("render", renderWorkers, renderQueue, queueCapacity);
+		final StageMetrics outputMetrics  = new StageMetrics("output", 1, outputQueue, queueCapacity);
+
+		metrics.clear();
+		metrics.add(loadMetrics);
+		metrics.add(clusterMetrics);
+		metrics.add(geocodeMetrics);
+		metrics.add(detectMetrics);
+		metrics.add(renderMetrics);
+		metrics.add(outputMetrics);
+
+		failure   = new AtomicReference<Throwable>(null);
+		pools     = new CopyOnWriteArrayList<ExecutorService>();
+		startTime = System.nanoTime();
+
+		final Semaphore inFlight = new Semaphore(maxInFlight);
+
+		try {
+			newPool("load", 1).submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						int sequence = 0;
+						while(true) {
+							inFlight.acquire();
+
+							long start    = System.nanoTime();
+							Author author = source.next();
+							if(author == null) break;
+							loadMetrics.record(1, System.nanoTime() - start);
+
+							int taskSequence = (source instanceof OrderedSource) ? ((OrderedSource)source).getSequence() : sequence;
+							sequence++;
+
+							AuthorTask task = new AuthorTask(taskSequence, author);
+							if(costModel != null) task.predictedNanos = costModel.predict(author);
+							put(clusterQueue, clusterMetrics, task);
+						}
+						put(clusterQueue, clusterMetrics, END);
+					}
+					catch(InterruptedException e) {
+						// 다른 단계의 exception으로 멈춘 경우
+					}
+					catch(Throwable e) {
+						fail(e);
+					}
+				}
+			});
+
+			if(costModel != null) {
+				startScheduledClusterStage(clusterMetrics, clusterQueue, geocodeQueue, geocodeMetrics);
+			}
+			else {
+				startStage(clusterMetrics, clusterQueue, geocodeQueue, geocodeMetrics, 1, new StageBody() {
+					@Override
+					public void process(List<AuthorTask> tasks) {
+						for(AuthorTask task : tasks) task.clusters = EfDriver.clusterAuthor(task.author);
+					}
+				});
+			}
+
+			startStage(geocodeMetrics, geocodeQueue, detectQueue, detectMetrics, geocodeBatchSize, new StageBody() {
+				@Override
+				public void process(List<AuthorTask> tasks) throws IOException {
+					ClusterGeocoder clusterGeocoder = new ClusterGeocoder(geocoder, geocodeCellSize);
+					clusterGeocoder.setLabelCheck(geocodeLabelCheck);
+					for(AuthorTask task : tasks) clusterGeocoder.add(task.author, task.clusters);
+					clusterGeocoder.run();
+					geocodeStatistics.addStatistics(clusterGeocoder);
+
+					for(AuthorTask task : tasks) task.clusters = null; // 클러스터는 author가 가지고 있다.
+				}
+			});
+
+			startStage(detectMetrics, detectQueue, renderQueue, renderMetrics, 1, new StageBody() {
+				@Override
+				public void process(List<AuthorTask> tasks) {
+					for(AuthorTask task : tasks) task.log = EfDriver.detectAuthorEvents(task.author);
+				}
+			});
+
+			startStage(renderMetrics, renderQueue, outputQueue, outputMetrics, 1, new StageBody() {
+				@Override
+				public void process(List<AuthorTask> tasks) throws IOException {
+					for(AuthorTask task : tasks) {
+						EfDriver.renderAuthor(task.author, outputdir);
+
+						// 출력 순서를 기다리는 동안 사용자의 이미지, 클러스터, 이벤트를 가지고 있지 않도록 한다.
+						task.author = null;
+						inFlight.release();
+					}
+				}
+			});
+
+			output(outputQueue, outputMetrics, indexWriter);
+		}
+		finally {
+			for(ExecutorService pool : pools) pool.shutdownNow();
+			endTime = System.nanoTime();
+		}
+	}
+
+	/**
+	 * output 단계. 끝난 순서와 상관없이 load 순서대로 로그와 index를 출력한다.
+	 */
+	private void output(BlockingQueue<AuthorTask> outputQueue, StageMetrics outputMetrics, Writer indexWriter) throws IOException, ParseException {
+		HashMap<Integer, AuthorTask> pending = new HashMap<Integer, AuthorTask>(); // 앞선 사용자를 기다리는 사용자들
+		int nextSequence = 0;
+		long lastReport  = System.nanoTime();
+
+		try {
+			while(true) {
+				AuthorTask task = outputQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				rethrowFailure();
+
+				if(System.nanoTime() - lastReport >= PROGRESS_INTERVAL_NANO) {
+					lastReport = System.nanoTime();
+					System.err.print(getStatistics());
+				}
+
+				if(task == null) continue;
+				if(task == END) break;
+
+				long start = System.nanoTime();
+				pending.put(task.sequence, task);
+				while((task = pending.remove(nextSequence)) != null) {
+					System.err.print(task.log);
+
+					String authorFilename = task.name + ".html";
+					indexWriter.write("<a href=\"" + authorFilename + "\">" + task.name + "</a><br/>");
+
+					nextSequence++;
+					outputMetrics.record(1, 0);
+				}
+				outputMetrics.busyNanos.addAndGet(System.nanoTime() - start);
+			}
+		}
+		catch(InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * 단계에서 tasks를 처리하는 작업.
+	 */
+	private static interface StageBody {
+		public void process(List<AuthorTask> tasks) throws Exception;
+	}
+
+	/**
+	 * 단계의 스레드들을 시작한다. 각 스레드는 input에서 최대 batchSize개의 작업을 꺼내 body로 처리한 후 output으로 넘긴다.
+	 * END를 받은 스레드는 같은 단계의 다른 스레드들을 위해 END를 다시 넣고, 단계의 마지막 스레드는 다음 단계로 END를 넘긴다.
+	 */
+	private void startStage(final StageMetrics stageMetrics, final BlockingQueue<AuthorTask> input, final BlockingQueue<AuthorTask> output, final StageMetrics outputMetrics, final int batchSize, final StageBody body) {
+		final AtomicInteger running = new AtomicInteger(stageMetrics.getWorkers());
+		ExecutorService pool = newPool(stageMetrics.getName(), stageMetrics.getWorkers());
+
+		for(int i=0;i<stageMetrics.getWorkers();i++) {
+			pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						ArrayList<AuthorTask> tasks = new ArrayList<AuthorTask>(batchSize);
+						boolean end = false;
+
+						while(end == false) {
+							tasks.clear();
+							end = take(input, tasks, batchSize);
+							if(tasks.isEmpty()) continue;
+
+							long start = System.nanoTime();
+							body.process(tasks);
+							stageMetrics.record(tasks.size(), System.nanoTime() - start);
+
+							for(AuthorTask task : tasks) put(output, outputMetrics, task);
+						}
+
+						if(running.decrementAndGet() == 0) put(output, outputMetrics, END);
+						else                               input.put(END);
+					}
+					catch(InterruptedException e) {
+						// 다른 단계의 exception으로 멈춘 경우
+					}
+					catch(Throwable e) {
+						fail(e);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * cost model을 사용할 때의 cluster 단계. input은 추정 비용이 큰 순서의 queue이다.
+	 * dispatcher 스레드가 clusterWorkers개의 자리 중 하나가 빌 때마다 가장 큰 사용자를 꺼내 work-stealing ForkJoinPool에 넘긴다.
+	 * 추정 비용이 costModel의 기준 이상인 사용자는 같은 ForkJoinPool로 병렬 클러스터링하며, 작은 사용자들을 끝낸 스레드들이 그 작업을 나누어 처리한다.
+	 * 큰 사용자가 늦게 시작해 전체 실행 시간을 늘리는 것을 막기 위한 것이다.
+	 */
+	private void startScheduledClusterStage(final StageMetrics stageMetrics, final BlockingQueue<AuthorTask> input, final BlockingQueue<AuthorTask> output, final StageMetrics outputMetrics) {
+		final int workers       = stageMetrics.getWorkers();
+		final ForkJoinPool pool = new ForkJoinPool(workers);
+		final Semaphore slots   = new Semaphore(workers);
+		pools.add(pool);
+
+		newPool("schedule", 1).submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while(true) {
+						slots.acquire();
+						final AuthorTask task = input.take();
+						if(task == END) break;
+
+						pool.execute(new Runnable() {
+							@Override
+							public void run() {
+								try {
+									// 앞선 사용자들로 보정된 모델로 다시 추정한다. 순서는 load 때의 추정값으로 정해진다.
+									double predicted = costModel.predict(task.author);
+									boolean parallel = costModel.isLarge(predicted);
+									if(parallel) task.author.setClusteringPool(pool);
+
+									long start = System.nanoTime();
+									try {
+										task.clusters = EfDriver.clusterAuthor(task.author);
+									}
+									finally {
+										task.author.setClusteringPool(null);
+									}
+									long elapsed = System.nanoTime() - start;
+
+									stageMetrics.record(1, elapsed);
+									costModel.observe(task.author, predicted, elapsed, parallel);
+									put(output, outputMetrics, task);
+								}
+								catch(InterruptedException e) {
+									// 다른 단계의 exception으로 멈춘 경우
+								}
+								catch(Throwable e) {
+									fail(e);
+								}
+								finally {
+									slots.release();
+								}
+							}
+						});
+					}
+
+					slots.acquire(workers - 1); // 처리 중인 사용자들이 모두 끝나야 다음 단계로 END를 넘길 수 있다.
+					put(output, outputMetrics, END);
+				}
+				catch(InterruptedException e) {
+					// 다른 단계의 exception으로 멈춘 경우
+				}
+				catch(Throwable e) {
+					fail(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * input에서 작업을 하나 이상, 최대 batchSize개 꺼낸다. batchSize가 1보다 크면 geocodeLingerMillis 동안 더 기다린다.
+	 * @return END를 만났다면 true
+	 */
+	private boolean take(BlockingQueue<AuthorTask> input, List<AuthorTask> tasks, int batchSize) throws InterruptedException {
+		AuthorTask task = input.take();
+		if(task == END) return true;
+		tasks.add(task);
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(geocodeLingerMillis);
+		while(tasks.size() < batchSize) {
+			long remaining = deadline - System.nanoTime();
+			task = (remaining > 0) ? input.poll(remaining, TimeUnit.NANOSECONDS) : input.poll();
+			if(task == null) break;
+			if(task == END) return true;
+			tasks.add(task);
+		}
+		return false;
+	}
+
+	private void put(BlockingQueue<AuthorTask> queue, StageMetrics queueMetrics, AuthorTask task) throws InterruptedException {
+		queue.put(task);
+		queueMetrics.observeDepth();
+	}
+
+	private ExecutorService newPool(final String name, int threads) {
+		final AtomicInteger count = new AtomicInteger(0);
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "pipeline-" + name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		pools.add(pool);
+		return pool;
+	}
+
+	/**
+	 * 처음 발생한 exception을 기록하고 모든 단계를 멈춘다.
+	 */
+	private void fail(Throwable e) {
+		if(failure.compareAndSet(null, e) == false) return;
+		for(ExecutorService pool : pools) pool.shutdownNow();
+	}
+
+	private void rethrowFailure() throws IOException, ParseException {
+		Throwable e = failure.get();
+		if(e == null) return;
+
+		if(e instanceof IOException) throw (IOException)e;
+		if(e instanceof ParseException) throw (ParseException)e;
+		if(e instanceof RuntimeException) throw (RuntimeException)e;
+		if(e instanceof Error) throw (Error)e;
+		throw new IOException(e);
+	}
+
+	/**
+	 * @return 단계별 처리 통계. load, cluster, geocode, detect, render, output 순서.
+	 */
+	public List<StageMetrics> getStageMetrics() { return metrics; }
+
+	/**
+	 * @return 모든 단계에서 합친 ClusterGeocoder 통계
+	 */
+	public ClusterGeocoder getGeocodeStatistics() { return geocodeStatistics; }
+
+	/**
+	 * @return 단계마다 "pipeline "으로 시작하는 한 줄씩의 통계
+	 */
+	public String getStatistics() {
+		long elapsed = ((endTime > startTime) ? endTime : System.nanoTime()) - startTime;
+
+		StringBuilder sb = new StringBuilder();
+		for(StageMetrics stage : metrics) sb.append("pipeline ").append(stage.toString(elapsed)).append("\n");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,147 @@
+package com.jackleg.EventFinding;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * 사용자별로 모여 있는(grouped) line 데이터 파일을 한 사용자씩 읽는 reader.
+ * LineDataLoader처럼 파일 전체를 메모리에 올리지 않으므로, 한 번에 한 사용자의 이미지만 메모리에 있다.
+ * 같은 사용자의 줄들이 연속해 있지 않은 파일은 읽을 수 없다. 이 경우 LineDataSorter로 먼저 정렬한다.
+ */
+public class AuthorReader implements Closeable, AuthorPipeline.Source {
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private String filename;
+	private InputStream in;
+	private LineDataLoader.LineParser parser;
+	private byte[] line;
+
+	// 파일에서 BUFFER_SIZE씩 읽은 블록. buffer[bufferPos, bufferEnd)가 아직 처리하지 않은 부분이다.
+	private byte[] buffer;
+	private int bufferPos;
+	private int bufferEnd;
+
+	// 다음 사용자의 첫 번째 이미지. next()에서 이전 사용자의 끝을 알기 위해 한 줄을 미리 읽는다.
+	private String pendingAuthorName;
+	private ImageEntity pendingImage;
+
+	private HashSet<String> finishedAuthors; // 이미 반환한 사용자 이름. 사용자별로 모여 있는지 확인하기 위해 사용한다.
+	private long lineCount;
+	private int authorCount;
+
+	/**
+	 * constructor.
+	 * @param filename 데이터 파일 이름. 형식은 EfUtility#loadLineData 참고.
+	 * @throws IOException
+	 */
+	public AuthorReader(String filename) throws IOException {
+		this.filename        = filename;
+		this.in              = new FileInputStream(filename);
+		this.parser          = new LineDataLoader.LineParser(Charset.defaultCharset()); // LineDataLoader와 같은 charset
+		this.line            = new byte[1024];
+		this.buffer          = new byte[BUFFER_SIZE];
+		this.bufferPos       = 0;
+		this.bufferEnd       = 0;
+		this.finishedAuthors = new HashSet<String>();
+		this.lineCount       = 0;
+		this.authorCount     = 0;
+	}
+
+	/**
+	 * 다음 사용자를 읽는다. 이미지는 LineDataLoader와 같이 시간순으로 정렬되어 있다.
+	 * @return 다음 사용자. 파일의 끝이면 null.
+	 * @throws IOException 파일을 읽을 수 없거나, 이미 반환한 사용자의 줄이 다시 나온 경우
+	 * @throws ParseException
+	 */
+	@Override
+	public Author next() throws IOException, ParseException {
+		if(pendingImage == null && readImage() == false) return null;
+
+		Author author = new Author(pendingAuthorName);
+		if(finishedAuthors.add(pendingAuthorName) == false) {
+			throw new IOException("input is not grouped by author: " + pendingAuthorName + " appears again in " + filename + ". sort it with LineDataSorter first.");
+		}
+
+		String authorName = pendingAuthorName;
+		do {
+			author.appendImage(pendingImage);
+			pendingImage = null;
+		} while(readImage() && authorName.equals(pendingAuthorName));
+
+		author.sortImages(false);
+		authorCount++;
+		return author;
+	}
+
+	/**
+	 * 다음 이미지를 pendingAuthorName, pendingImage에 읽는다. 빈 줄은 건너뛴다.
+	 * @return 이미지를 읽었다면 true, 파일의 끝이면 false.
+	 */
+	private boolean readImage() throws IOException, ParseException {
+		while(true) {
+			int length = readLine();
+			if(length < 0) return false;
+
+			ImageEntity image = parser.parse(line, length);
+			if(image == null) continue;
+
+			pendingAuthorName = parser.getAuthorName();
+			pendingImage      = image;
+			lineCount++;
+			return true;
+		}
+	}
+
+	/**
+	 * 다음 줄을 line에 읽는다. 블록에서 '\n'을 찾아 그 앞까지를 한 번에 복사하며, 줄이 블록의 끝에 걸치면 다음 블록을 읽어 이어 붙인다.
+	 * @return 줄의 길이. ('\n' 제외) 파일의 끝이면 -1.
+	 */
+	private int readLine() throws IOException {
+		int length = 0;
+		while(true) {
+			if(bufferPos == bufferEnd) {
+				bufferEnd = in.read(buffer, 0, buffer.length);
+				bufferPos = 0;
+				if(bufferEnd <= 0) { // 파일의 끝. 마지막 줄에 '\n'이 없을 수 있다.
+					bufferEnd = 0;
+					return (length == 0) ? -1 : length;
+				}
+			}
+
+			int end = bufferPos;
+			while(end < bufferEnd && buffer[end] != '\n') end++;
+
+			int count = end - bufferPos;
+			if(length + count > line.length) line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+			System.arraycopy(buffer, bufferPos, line, length, count);
+			length += count;
+
+			if(end < bufferEnd) { // '\n'을 찾음
+				bufferPos = end + 1;
+				return length;
+			}
+			bufferPos = bufferEnd;
+		}
+	}
+
+	/**
+	 * @return 지금까지 읽은 줄 수. (빈 줄 제외)
+	 */
+	public long getLineCount() { return lineCount; }
+
+	/**
+	 * @return 지금까지 반환한 사용자 수
+	 */
+	public int getAuthorCount() { return authorCount; }
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,295 @@
+package com.jackleg.EventFinding;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 다른 ReverseGeocoder(e.g. HttpReverseGeocoder)의 호출을 줄이기 위한 decorator.
+ * 1. cache: 좌표를 cellSize 크기의 격자로 양자화해 격자 칸마다 결과를 LRU로 저장한다. 찾을 수 없었던 좌표도 저장한다.
+ * 2. coalescing: 같은 칸에 대한 요청이 이미 진행 중이면 새로 요청하지 않고 그 결과를 기다린다.
+ * 3. batching: cache에 없는 좌표들을 batchSize개씩 묶어 delegate의 batch 호출로 요청한다.
+ * 4. 동시 요청 제한: delegate를 동시에 호출하는 개수를 maxConcurrency개로 제한한다.
+ * cellSize가 0이면 좌표가 bit 단위로 같을 때만 같은 칸으로 본다. 0보다 크면 delegate에는 칸의 중심(GeoCellKey#getCenter)을 요청하고,
+ * 같은 칸의 좌표들은 그 결과를 함께 사용한다. 어느 좌표가 먼저 요청되는지와 상관없이 결과가 같으며, delegate는 칸의 중심에 대해 그 칸의 지명을 답할 수 있어야 한다.
+ */
+public class CachingReverseGeocoder implements ReverseGeocoder {
+	// 찾을 수 없었던 좌표의 cache 값
+	private static final GeoTable.Place NOT_FOUND = new GeoTable.Place(Double.NaN, Double.NaN, null, null, null);
+
+	private ReverseGeocoder delegate;
+	private double cellSize;
+	private int batchSize;
+	private Semaphore permits;
+
+	private Map<GeoCellKey, GeoTable.Place> cache; // access order의 LinkedHashMap. cache 객체로 동기화한다.
+	private ConcurrentHashMap<GeoCellKey, PendingPlace> inFlight;
+	private ExecutorService asyncExecutor;
+
+	private AtomicLong requestCount;
+	private AtomicLong hitCount;
+	private AtomicLong coalescedCount;
+	private AtomicLong delegateCallCount;
+	private AtomicLong delegatePointCount;
+
+	/**
+	 * constructor.
+	 * @param delegate 실제로 reverse-geocoding을 수행할 ReverseGeocoder
+	 * @param cacheCapacity cache에 저장할 최대 격자 칸 개수
+	 * @param cellSize 격자 칸의 크기. 좌표와 같은 단위. 0이면 양자화하지 않는다.
+	 * @param maxConcurrency delegate를 동시에 호출할 수 있는 최대 개수
+	 * @param batchSize delegate의 batch 호출 한 번에 담을 최대 좌표 개수
+	 */
+	public CachingReverseGeocoder(ReverseGeocoder delegate, final int cacheCapacity, double cellSize, int maxConcurrency, int batchSize) {
+		this.delegate  = delegate;
+		this.cellSize  = Math.max(cellSize, 0.0);
+		this.batchSize = Math.max(batchSize, 1);
+		this.permits   = new Semaphore(Math.max(maxConcurrency, 1));
+
+		this.cache = new LinkedHashMap<GeoCellKey, GeoTable.Place>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<GeoCellKey, GeoTable.Place> eldest) {
+				return size() > cacheCapacity;
+			}
+		};
+		this.inFlight = new ConcurrentHashMap<GeoCellKey, PendingPlace>();
+
+		// 비동기 요청을 처리할 스레드. 프로그램 종료를 막지 않도록 daemon 스레드로 만든다.
+		this.asyncExecutor = Executors.newFixedThreadPool(Math.max(maxConcurrency, 1), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "reverse-geocoder");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		this.requestCount       = new AtomicLong(0);
+		this.hitCount           = new AtomicLong(0);
+		this.coalescedCount     = new AtomicLong(0);
+		this.delegateCallCount  = new AtomicLong(0);
+		this.delegatePointCount = new AtomicLong(0);
+	}
+
+	@Override
+	public GeoTable.Place reverseGeocode(Point point) throws IOException {
+		return reverseGeocode(Collections.singletonList(point)).get(0);
+	}
+
+	@Override
+	public List<GeoTable.Place> reverseGeocode(List<Point> points) throws IOException {
+		requestCount.addAndGet(points.size());
+
+		GeoTable.Place[] result = new GeoTable.Place[points.size()];
+		ArrayList<Future<GeoTable.Place>> waits = new ArrayList<Future<GeoTable.Place>>(points.size());
+
+		// 이 호출에서 delegate로 요청할 좌표들
+		ArrayList<GeoCellKey> ownKeys       = new ArrayList<GeoCellKey>();
+		ArrayList<Point> ownPoints          = new ArrayList<Point>();
+		ArrayList<PendingPlace> ownPendings = new ArrayList<PendingPlace>();
+
+		for(int i=0;i<points.size();i++) {
+			Point point = points.get(i);
+			if(point == null) {
+				waits.add(null);
+				continue;
+			}
+
+			GeoCellKey key = GeoCellKey.of(point, cellSize);
+			GeoTable.Place cached = getCached(key);
+			if(cached != null) {
+				hitCount.incrementAndGet();
+				result[i] = (cached == NOT_FOUND) ? null : cached;
+				waits.add(null);
+				continue;
+			}
+
+			// 같은 칸을 요청 중인 호출이 있다면(이 호출의 앞쪽 좌표 포함) 그 결과를 기다린다.
+			PendingPlace pending  = new PendingPlace();
+			PendingPlace existing = inFlight.putIfAbsent(key, pending);
+			if(existing != null) {
+				coalescedCount.incrementAndGet();
+				waits.add(existing);
+				continue;
+			}
+
+			// cache를 확인한 후 putIfAbsent 사이에 다른 호출이 끝났을 수 있으므로 다시 확인한다.
+			cached = getCached(key);
+			if(cached != null) {
+				hitCount.incrementAndGet();
+				result[i] = (cached == NOT_FOUND) ? null : cached;
+				pending.complete(result[i]);
+				inFlight.remove(key, pending);
+				waits.add(null);
+				continue;
+			}
+
+			ownKeys.add(key);
+			ownPoints.add((cellSize > 0.0) ? key.getCenter(cellSize) : point);
+			ownPendings.add(pending);
+			waits.add(pending);
+		}
+
+		fetch(ownKeys, ownPoints, ownPendings);
+
+		for(int i=0;i<points.size();i++) {
+			if(waits.get(i) != null) result[i] = await(waits.get(i));
+		}
+
+		return Arrays.asList(result);
+	}
+
+	/**
+	 * reverseGeocode(List)를 asyncExecutor에서 비동기로 수행한다. 동시에 진행되는 delegate 호출 개수는 동기 호출과 합쳐서 제한된다.
+	 * @param points 지명을 구할 좌표들
+	 * @return points와 같은 순서의 지명 정보 리스트를 반환할 Future
+	 */
+	public Future<List<GeoTable.Place>> reverseGeocodeAsync(final List<Point> points) {
+		return asyncExecutor.submit(new Callable<List<GeoTable.Place>>() {
+			@Override
+			public List<GeoTable.Place> call() throws IOException {
+				return reverseGeocode(points);
+			}
+		});
+	}
+
+	/**
+	 * 비동기 요청에 사용하는 스레드를 정리한다.
+	 */
+	public void close() {
+		asyncExecutor.shutdown();
+	}
+
+	/**
+	 * @return 요청된 좌표 개수, cache hit, coalescing, delegate 호출 횟수를 한 줄로 요약한 문자열
+	 */
+	public String getStatistics() {
+		return "requests: " + requestCount.get()
+			+ ", cache hits: " + hitCount.get()
+			+ ", coalesced: " + coalescedCount.get()
+			+ ", delegate calls: " + delegateCallCount.get() + " (" + delegatePointCount.get() + " points)";
+	}
+
+	public long getRequestCount() { return requestCount.get(); }
+	public long getHitCount() { return hitCount.get(); }
+	public long getCoalescedCount() { return coalescedCount.get(); }
+	public long getDelegateCallCount() { return delegateCallCount.get(); }
+
+	/**
+	 * cache에 없는 좌표들을 batchSize개씩 delegate에 요청하고, 결과를 cache에 넣은 후 기다리는 호출들에게 전달한다.
+	 * 요청에 실패하면 아직 결과를 받지 못한 좌표들을 기다리는 호출들도 모두 같은 exception으로 실패한다.
+	 */
+	private void fetch(List<GeoCellKey> keys, List<Point> points, List<PendingPlace> pendings) throws IOException {
+		int done = 0;
+		try {
+			for(int from=0;from<points.size();from+=batchSize) {
+				int to = Math.min(from + batchSize, points.size());
+
+				List<GeoTable.Place> places = null;
+				permits.acquire();
+				try {
+					delegateCallCount.incrementAndGet();
+					delegatePointCount.addAndGet(to - from);
+					places = delegate.reverseGeocode(points.subList(from, to));
+				}
+				finally {
+					permits.release();
+				}
+
+				for(int i=from;i<to;i++) {
+					GeoTable.Place place = places.get(i - from);
+					putCached(keys.get(i), (place == null) ? NOT_FOUND : place);
+					pendings.get(i).complete(place);
+					inFlight.remove(keys.get(i), pendings.get(i));
+					done = i + 1;
+				}
+			}
+		}
+		catch(InterruptedException e) {
+			IOException exception = new IOException(e);
+			fail(keys, pendings, done, exception);
+			throw exception;
+		}
+		catch(IOException e) {
+			fail(keys, pendings, done, e);
+			throw e;
+		}
+		catch(RuntimeException e) {
+			fail(keys, pendings, done, e);
+			throw e;
+		}
+	}
+
+	private void fail(List<GeoCellKey> keys, List<PendingPlace> pendings, int from, Throwable cause) {
+		for(int i=from;i<pendings.size();i++) {
+			pendings.get(i).fail(cause);
+			inFlight.remove(keys.get(i), pendings.get(i));
+		}
+	}
+
+	private GeoTable.Place await(Future<GeoTable.Place> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch(InterruptedException e) {
+			throw new IOException(e);
+		}
+		catch(ExecutionException e) {
+			if(e.getCause() instanceof IOException) throw (IOException)e.getCause();
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private GeoTable.Place getCached(GeoCellKey key) {
+		synchronized(cache) {
+			return cache.get(key);
+		}
+	}
+
+	private void putCached(GeoCellKey key, GeoTable.Place place) {
+		synchronized(cache) {
+			cache.put(key, place);
+		}
+	}
+
+	/**
+	 * 진행 중인 요청의 결과. 요청한 호출이 complete() 또는 fail()로 결과를 넣는다.
+	 */
+	private static class PendingPlace extends FutureTask<GeoTable.Place> {
+		private static final Callable<GeoTable.Place> UNUSED = new Callable<GeoTable.Place>() {
+			@Override
+			public GeoTable.Place call() {
+				throw new IllegalStateException("PendingPlace is completed by complete() or fail()");
+			}
+		};
+
+		private PendingPlace() {
+			super(UNUSED);
+		}
+
+		private void complete(GeoTable.Place place) {
+			set(place);
+		}
+
+		private void fail(Throwable cause) {
+			setException(cause);
+		}
+	}
+}
@@ -1,11 +1,9 @@
 package com.jackleg.EventFinding;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
 
 import com.jackleg.EventFinding.EfUtility.Quantiles;
 
@@ -19,6 +17,14 @@ public class Cluster
 	protected Author author;
 	protected ArrayList<ImageEntity> images;
 	
+	// 이미지를 추가할 때마다 갱신하는 집계 값들. 클러스터에 이미지가 없으면 의미 없는 값이다.
+	private long firstTime;         // 가장 빠른 시각 (epoch milliseconds)
+	private long lastTime;          // 가장 늦은 시각 (epoch milliseconds)
+	private int photoDaysCount;     // 사진을 찍은 날짜 수
+	private long lastPhotoDay;      // 지금까지 추가된 이미지 중 가장 늦은 이미지의 날짜 (epoch day)
+	private boolean photoDaysDirty; // 시간 역순으로 추가된 이미지가 있어, photoDaysCount를 다시 계산해야 하는 경우 true.
+	private Point centerPoint;      // getCenterPoint()의 결과. 이미지가 추가되거나 순서가 바뀌면 null로 지운다.
+	
 	/**
 	 * constructor.
 	 */
@@ -33,6 +39,7 @@ public class Cluster
 		this.id = id;
 		this.author = author;
 		this.images = null;
+		this.centerPoint = null;
 	}
 	
 	public int getId() { return id; }
@@ -64,6 +71,68 @@ public class Cluster
 	public void addImage(ImageEntity image) {
 		if(images == null) images = new ArrayList<ImageEntity>();
 		images.add(image);
+		updateAggregates(image, images.size() == 1);
+	}
+	
+	/**
+	 * 이미지를 클러스터의 시간순 위치에 추가. 이미지들이 이미 시간순으로 정렬되어 있어야 하며, 추가 후에도 정렬된 상태가 유지된다.
+	 * 시각이 같은 이미지들 사이에서는 먼저 추가된 이미지가 앞에 오므로, addImage() 후 sortImages()를 호출한 것과 같은 순서가 된다.
+	 * @param image 추가될 이미지
+	 */
+	public void insertImage(ImageEntity image) {
+		if(images == null) images = new ArrayList<ImageEntity>();
+		
+		// image보다 dateTime이 큰 최초의 index를 찾아 그 앞에 추가한다. 마지막 이미지보다 늦다면 뒤에 추가한다.
+		int low  = 0;
+		int high = images.size();
+		if(high > 0 && images.get(high-1).getTime() <= image.getTime()) low = high;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(images.get(mid).getTime() <= image.getTime()) low  = mid + 1;
+			else                                             high = mid;
+		}
+		images.add(low, image);
+		updateAggregates(image, images.size() == 1);
+	}
+	
+	/**
+	 * 이미지 하나가 추가되었을 때 집계 값들을 갱신한다.
+	 * 사진 날짜 수는 시간순으로 추가되는 동안에는 날짜가 바뀔 때마다 하나씩 늘리고, 시간 역순으로 추가된 이미지가 있으면 필요할 때 다시 계산한다.
+	 * @param image 추가된 이미지
+	 * @param first 클러스터의 첫 번째 이미지인지 여부
+	 */
+	private void updateAggregates(ImageEntity image, boolean first) {
+		long time = image.getTime();
+		long day  = EfUtility.toEpochDay(time);
+		centerPoint = null;
+		
+		if(first) {
+			firstTime      = time;
+			lastTime       = time;
+			photoDaysCount = 1;
+			lastPhotoDay   = day;
+			photoDaysDirty = false;
+			return;
+		}
+		
+		if(time < firstTime) firstTime = time;
+		if(time >= lastTime) {
+			lastTime = time;
+			if(day > lastPhotoDay) photoDaysCount++;
+			else if(day < lastPhotoDay) photoDaysDirty = true; // 서머타임 등으로 날짜가 거꾸로 가는 경우
+			lastPhotoDay = Math.max(lastPhotoDay, day);
+		}
+		else {
+			photoDaysDirty = true;
+		}
+	}
+	
+	/**
+	 * images를 직접 지정한 경우 집계 값들을 처음부터 다시 계산한다.
+	 */
+	protected void recalculateAggregates() {
+		if(images == null) return;
+		for(int i=0;i<images.size();i++) updateAggregates(images.get(i), i == 0);
 	}
 	
 	/**
@@ -82,18 +151,28 @@ public class Cluster
 	 */
 	public Date getFirstTime() {
 		if(images == null || images.size() == 0) return null;
-		return images.get(0).getDateTime();
+		return new Date(firstTime);
 	}
 	
+	/**
+	 * @return 이 클러스터에 속한 사진들 중, 가장 빠른 시각. (epoch milliseconds) 사진이 없다면 의미 없는 값이다.
+	 */
+	public long getFirstTimeInMillis() { return firstTime; }
+	
 	/**
 	 * 이 클러스터에 포함된 사진들 중 가장 늦은 시각을 반환
 	 * @return 이 클러스터에 속한 사진들 중, 가장 늦은 시각. 사진이 없다면 null.
 	 */
 	public Date getLastTime() {
 		if(images == null || images.size() == 0) return null;
-		return images.get(images.size()-1).getDateTime();
+		return new Date(lastTime);
 	}
 	
+	/**
+	 * @return 이 클러스터에 속한 사진들 중, 가장 늦은 시각. (epoch milliseconds) 사진이 없다면 의미 없는 값이다.
+	 */
+	public long getLastTimeInMillis() { return lastTime; }
+	
 	/**
 	 * 이 클러스터와 주어진 클러스터를 병합한다.
 	 * @param cluster 병합할 클러스터.
@@ -109,6 +188,7 @@ public class Cluster
 	 */
 	public void sortImages() {
 		Collections.sort(images);
+		centerPoint = null; // 중심점은 이미지 순서대로 더하므로, 순서가 바뀌면 다시 계산한다.
 	}
 	
 	/**
@@ -117,6 +197,20 @@ public class Cluster
 	 * @return split된 사진들의 리스트의 리스트.
 	 */
 	public ArrayList<ArrayList<ImageEntity>> splitByInterval(double intervalThresholdInSec) {
+		int[] bounds = splitRangesByInterval(intervalThresholdInSec);
+		
+		ArrayList<ArrayList<ImageEntity>> resultList = new ArrayList<ArrayList<ImageEntity>>();
+		for(int i=0;i<bounds.length-1;i++) resultList.add(new ArrayList<ImageEntity>(images.subList(bounds[i], bounds[i+1])));
+		
+		return resultList;
+	}
+	
+	/**
+	 * 클러스터의 사진들을 shot interval을 기준으로 split한다. splitByInterval()과 같지만, 이미지를 복사하지 않고 시간순으로 정렬된 images의 index 구간으로 반환한다.
+	 * @param intervalThresholdInSec split하기 위한 interval threshold. in sec. 0을 받으면 IQR로 upper fence를 계산해 사용한다.
+	 * @return split된 구간들의 경계. i번째 구간은 images의 [bounds[i], bounds[i+1]) 이며, 구간의 개수는 bounds.length-1 이다.
+	 */
+	public int[] splitRangesByInterval(double intervalThresholdInSec) {
 		sortImages();
 
 		// intervalThreshold가 0이면 IQR 기법으로 upper fence를 계산한다.
@@ -124,17 +218,17 @@ public class Cluster
 			// IQR 기법을 사용하기 위해서는 최소한 4개의 이미지가 있어야 함. 없다면 전체 이미지를 모두 포함하기 위해 max 값을 취함.
 			if(images.size() < 4) intervalThresholdInSec = Double.MAX_VALUE;
 			
-			ArrayList<Double> diffList = new ArrayList<Double>();
+			double[] diffs = new double[images.size() - 1];
 			for(int i=1;i<images.size();i++) {
 				// warning:
 				// A: 29일 13시, B: 31일 10시인 경우, diffInDay는 2일이 되어야 함.
 				// 이것을 계산할 때, B.getTime()-A.getTime() 으로 계산하면, 1.xxx가 되기 때문에 diffInDay가 1이 됨.
 				// 로직을 변경할 일이 있을 경우 조심할 것.
-				long diffInDay = EfUtility.calculateDiffDays(images.get(i-1).getDateTime(), images.get(i).getDateTime());
-				diffList.add((double)diffInDay);
+				long diffInDay = EfUtility.calculateDiffDays(images.get(i-1).getTime(), images.get(i).getTime());
+				diffs[i-1] = diffInDay;
 			}
 		
-			Quantiles quantiles = EfUtility.calculateQuantiles(diffList.toArray(new Double[0]));
+			Quantiles quantiles = EfUtility.calculateQuantiles(diffs);
 			// 3rd quantile 값이 1.0보다 작거나 같은 경우는 대부분의 사진들이 같은 날, 혹은 매일 찍힌다는 것으로, 통계치를 사용하지 않고 한달을 사용한다.
 			if(quantiles.q3 <= 1.0) intervalThresholdInSec = 30.0 * EfUtility.DAY1_IN_SECONDS;
 			else                    intervalThresholdInSec = (quantiles.q3 + 1.5 * (quantiles.q3 - quantiles.q1)) * EfUtility.DAY1_IN_SECONDS;
@@ -142,29 +236,23 @@ public class Cluster
 		
 		// Date에서는 millisecond 기준으로 계산하므로 * 1000
 		double intervalThreshold = intervalThresholdInSec * 1000;
+		int size = getImagesCount();
+		if(size == 0) return new int[] {0};
 		
-		int startIndex = 0;
-		int endIndex   = 0;
-		ArrayList<ArrayList<ImageEntity>> resultList = new ArrayList<ArrayList<ImageEntity>>();
-		
-		for(int index=1;index<images.size();index++) {
-			long interval = images.get(index).getDateTime().getTime() - images.get(index-1).getDateTime().getTime();
-			if(interval <= intervalThreshold) { endIndex = index; }
-			else { // interval이 threshold보다 높다는 것은, 새로운 클러스터의 시작이라는 뜻. 이제까지의 묶음으로 클러스터를 만들어 추가한다.
-				ArrayList<ImageEntity> currentCluster = new ArrayList<ImageEntity>();
-				for(int imageIndex=startIndex; imageIndex<=endIndex;imageIndex++) currentCluster.add(images.get(imageIndex));
-				resultList.add(currentCluster);
-				
-				endIndex = startIndex = index;
-			}
+		// interval이 threshold보다 높다는 것은, 새로운 클러스터의 시작이라는 뜻. 먼저 구간의 개수를 센 후 경계를 채운다.
+		int splits = 0;
+		for(int index=1;index<size;index++) {
+			if(images.get(index).getTime() - images.get(index-1).getTime() > intervalThreshold) splits++;
 		}
 		
-		// for문을 돌고 난 후 남은 마지막 이미지들
-		ArrayList<ImageEntity> currentCluster = new ArrayList<ImageEntity>();
-		for(int imageIndex=startIndex; imageIndex<=endIndex; imageIndex++) currentCluster.add(images.get(imageIndex));
-		resultList.add(currentCluster);
+		int[] bounds = new int[splits + 2];
+		int count = 1;
+		for(int index=1;index<size;index++) {
+			if(images.get(index).getTime() - images.get(index-1).getTime() > intervalThreshold) bounds[count++] = index;
+		}
+		bounds[count] = size;
 		
-		return resultList;
+		return bounds;
 	}
 	
 	/**
@@ -172,15 +260,23 @@ public class Cluster
 	 * @return 이 클러스터에 속한 사진들의 날짜 수
 	 */
 	public int calculatePhotoDaysCount() {
-		SimpleDateFormat dateSdf = new SimpleDateFormat("yyyyMMdd");
-		Set<String> dateSet = new HashSet<String>();
+		if(images == null || images.size() == 0) return 0;
+		if(photoDaysDirty == false) return photoDaysCount;
 		
-		for(ImageEntity image : getImages()) {
-			String dateStr = dateSdf.format(image.getDateTime());
-			dateSet.add(dateStr);
+		// 시간 역순으로 추가된 이미지가 있었다면, 날짜들을 정렬해서 다시 센다.
+		long[] days = new long[images.size()];
+		for(int i=0;i<days.length;i++) days[i] = EfUtility.toEpochDay(images.get(i).getTime());
+		Arrays.sort(days);
+		
+		int count = 1;
+		for(int i=1;i<days.length;i++) {
+			if(days[i] != days[i-1]) count++;
 		}
 		
-		return dateSet.size();
+		photoDaysCount = count;
+		lastPhotoDay   = EfUtility.toEpochDay(lastTime);
+		photoDaysDirty = false;
+		return photoDaysCount;
 	}
 	
 	/**
@@ -189,14 +285,19 @@ public class Cluster
 	 */
 	public long calculateDurationDaysCount() {
 		// diffDays는 날짜 차이를 계산하기 때문에, duration을 계산하기 위해서 시작 날짜를 포함해야 하므로 1을 더해줘야 한다.
-		return EfUtility.calculateDiffDays(getFirstTime(), getLastTime()) + 1;
+		return EfUtility.calculateDiffDays(firstTime, lastTime) + 1;
 	}
 	
 	/**
-	 * 이 클러스터의 포인트들의 중심점
+	 * 이 클러스터의 포인트들의 중심점. 한 번 계산한 값은 이미지가 추가되거나 순서가 바뀔 때까지 재사용한다.
 	 * @return 이 클러스터의 포인트들의 중심점, 중심점을 구할 수 없다면 null.
 	 */
 	public Point getCenterPoint() {
+		if(centerPoint == null) centerPoint = calculateCenterPoint();
+		return centerPoint;
+	}
+	
+	private Point calculateCenterPoint() {
 		double sumX = 0.0;
 		double sumY = 0.0;
 		int count = 0;
@@ -220,6 +321,6 @@ public class Cluster
 	
 	@Override
 	public int compareTo(Cluster o) {
-		return getFirstTime().compareTo(o.getFirstTime());
+		return (firstTime < o.firstTime) ? -1 : ((firstTime == o.firstTime) ? 0 : 1);
 	}
 }
@@ -0,0 +1,205 @@
+package com.jackleg.EventFinding;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 여러 사용자의 local cluster들을 모아 한 번에 reverse-geocoding 하는 단계.
+ * 클러스터마다 getImageForApproxRG()의 좌표를 cellSize 크기의 격자에 맞추고, 같은 격자 칸의 클러스터들은 한 번만 요청해 결과를 함께 사용한다.
+ * 많은 사용자의 hometown이 같은 지역에 있으므로, 사용자별로 요청할 때보다 요청 수가 크게 줄어든다.
+ * 격자 칸의 대표 좌표는 칸의 중심(GeoCellKey#getCenter)이므로, 클러스터가 받는 지명은 어느 사용자들과 함께 run() 하는지와 상관없이 같다.
+ * cellSize가 0이면 대표 좌표는 클러스터의 좌표 그대로이다. 0보다 크면 geocoder는 칸의 중심에 대해 그 칸의 지명을 답할 수 있어야 한다.
+ * (e.g. GeoTable이라면 허용 거리가 칸의 대각선 절반 이상)
+ * cellSize가 0보다 크면 클러스터가 자기 좌표가 아닌 대표 좌표의 지명을 받게 된다. 이런 클러스터 개수(snapped)를 통계로 남기며,
+ * setLabelCheck(true)이면 그 클러스터들의 좌표도 함께 요청해 실제로 지명이 달라진 개수(relabeled)를 센다.
+ * 사용자들을 나누어 처리할 때는 add(), run(), clear()를 반복하며, 통계는 모든 run()의 합계이다.
+ */
+public class ClusterGeocoder {
+	private ReverseGeocoder geocoder;
+	private double cellSize;
+
+	private ArrayList<Author> authors;
+	private ArrayList<List<LocalCluster>> authorClusters;
+
+	private boolean labelCheck;
+
+	private int pointCount;
+	private int cellCount;
+	private int snappedCount;   // 자기 좌표가 아닌 대표 좌표로 요청한 클러스터 개수
+	private int checkedCount;   // labelCheck로 자기 좌표를 따로 요청한 클러스터 개수
+	private int relabeledCount; // 그 중 대표 좌표의 지명과 결과가 다른 클러스터 개수
+
+	/**
+	 * constructor.
+	 * @param geocoder reverse-geocoding에 사용할 ReverseGeocoder
+	 * @param cellSize 격자 칸의 크기. 좌표와 같은 단위. 0이면 좌표가 같은 클러스터끼리만 요청을 합친다.
+	 */
+	public ClusterGeocoder(ReverseGeocoder geocoder, double cellSize) {
+		this.geocoder       = geocoder;
+		this.cellSize       = cellSize;
+		this.authors        = new ArrayList<Author>();
+		this.authorClusters = new ArrayList<List<LocalCluster>>();
+		this.labelCheck     = false;
+		this.pointCount     = 0;
+		this.cellCount      = 0;
+		this.snappedCount   = 0;
+		this.checkedCount   = 0;
+		this.relabeledCount = 0;
+	}
+
+	/**
+	 * 격자 칸으로 합쳐진 클러스터들의 좌표도 요청해, 격자 칸 때문에 지명이 달라진 클러스터 개수를 셀지 정한다.
+	 * 결과는 바뀌지 않으며, cellSize를 정하기 위한 용도이다. 요청 수가 늘어난다.
+	 * @param labelCheck true이면 지명이 달라진 클러스터 개수를 센다.
+	 */
+	public void setLabelCheck(boolean labelCheck) { this.labelCheck = labelCheck; }
+
+	/**
+	 * 사용자의 local cluster들을 추가한다.
+	 * @param author 사용자
+	 * @param clusters author.doLocalClustering()의 결과. null이면 클러스터가 없는 것으로 본다.
+	 */
+	public void add(Author author, List<LocalCluster> clusters) {
+		authors.add(author);
+		authorClusters.add(clusters);
+	}
+
+	/**
+	 * 추가된 모든 클러스터를 격자 칸별로 모아 칸의 대표 좌표를 한 번씩 reverse-geocoding 하고, 결과를 각 클러스터의 setApproxLocalInfo()로 전달한다.
+	 * 사용자별 reverse-geocoding API 호출 회수에는 그 사용자의 클러스터 개수를 기록한다.
+	 * @throws IOException reverse-geocoding 요청에 실패한 경우
+	 */
+	public void run() throws IOException {
+		LinkedHashMap<GeoCellKey, Integer> cellIndexes = new LinkedHashMap<GeoCellKey, Integer>();
+		ArrayList<ArrayList<LocalCluster>> cellMembers = new ArrayList<ArrayList<LocalCluster>>();
+		ArrayList<Point> points = new ArrayList<Point>();
+
+		// labelCheck일 때 자기 좌표를 따로 요청할 클러스터들의 격자 칸 번호와 좌표
+		ArrayList<Integer> checkCells = new ArrayList<Integer>();
+		ArrayList<Point> checkPoints  = new ArrayList<Point>();
+
+		for(int i=0;i<authors.size();i++) {
+			List<LocalCluster> clusters = authorClusters.get(i);
+			authors.get(i).setReverseGeoApiCallCount((clusters == null) ? 0 : clusters.size());
+			if(clusters == null) continue;
+
+			for(LocalCluster cluster : clusters) {
+				Point point    = cluster.getImageForApproxRG().getPoint(); // 클러스터에서 reverse-geocoding을 위해 center와 가장 가까운 이미지를 얻음
+				GeoCellKey key = GeoCellKey.of(point, cellSize);
+
+				Integer cellIndex = cellIndexes.get(key);
+				if(cellIndex == null) {
+					cellIndex = cellMembers.size();
+					cellIndexes.put(key, cellIndex);
+					cellMembers.add(new ArrayList<LocalCluster>());
+					points.add(key.getCenter(cellSize));
+				}
+				if(samePoint(point, points.get(cellIndex)) == false) {
+					snappedCount++;
+					if(labelCheck) {
+						checkCells.add(cellIndex);
+						checkPoints.add(point);
+					}
+				}
+				cellMembers.get(cellIndex).add(cluster);
+				pointCount++;
+			}
+		}
+		cellCount    += cellMembers.size();
+		checkedCount += checkPoints.size();
+
+		points.addAll(checkPoints);
+		List<GeoTable.Place> places = geocoder.reverseGeocode(points);
+
+		for(int cellIndex=0;cellIndex<cellMembers.size();cellIndex++) {
+			GeoTable.Place place = places.get(cellIndex);
+
+			for(LocalCluster cluster : cellMembers.get(cellIndex)) {
+				if(place != null) cluster.setApproxLocalInfo(place.getAcFirst(), place.getAcSecond(), place.getCountry());
+				else              cluster.setApproxLocalInfo(null, null, null);
+			}
+		}
+
+		for(int i=0;i<checkCells.size();i++) {
+			GeoTable.Place own  = places.get(cellMembers.size() + i);
+			GeoTable.Place cell = places.get(checkCells.get(i));
+			if(sameLabel(own, cell) == false) relabeledCount++;
+		}
+	}
+
+	private static boolean samePoint(Point a, Point b) {
+		return Double.doubleToLongBits(a.getX()) == Double.doubleToLongBits(b.getX())
+			&& Double.doubleToLongBits(a.getY()) == Double.doubleToLongBits(b.getY());
+	}
+
+	private static boolean sameLabel(GeoTable.Place a, GeoTable.Place b) {
+		if(a == null || b == null) return a == b;
+		return StringUtils.equals(a.getAcFirst(), b.getAcFirst())
+			&& StringUtils.equals(a.getAcSecond(), b.getAcSecond())
+			&& StringUtils.equals(a.getCountry(), b.getCountry());
+	}
+
+	/**
+	 * @return 지금까지의 run()에서 reverse-geocoding이 필요했던 클러스터 개수
+	 */
+	public int getPointCount() { return pointCount; }
+
+	/**
+	 * @return 지금까지의 run()에서 실제로 요청한 격자 칸의 개수
+	 */
+	public int getCellCount() { return cellCount; }
+
+	/**
+	 * @return 지금까지의 run()에서 자기 좌표가 아닌 격자 칸의 중심 좌표로 지명을 받은 클러스터 개수. cellSize가 0이면 항상 0.
+	 */
+	public int getSnappedCount() { return snappedCount; }
+
+	/**
+	 * @return labelCheck로 확인한 클러스터 중 자기 좌표의 지명과 받은 지명이 다른 클러스터 개수
+	 */
+	public int getRelabeledCount() { return relabeledCount; }
+
+	/**
+	 * @return 중복 제거 비율. 클러스터 개수 / 요청한 격자 칸 개수. 클러스터가 없다면 1.0.
+	 */
+	public double getDeduplicationRatio() {
+		if(cellCount == 0) return 1.0;
+		return (double)pointCount / cellCount;
+	}
+
+	/**
+	 * @return 클러스터 개수, 요청 개수, 중복 제거 비율, 격자 칸 때문에 지명이 바뀌었을 수 있는(snapped) 클러스터 개수를 한 줄로 요약한 문자열.
+	 *         labelCheck로 확인한 클러스터가 있다면 실제로 지명이 바뀐(relabeled) 개수도 포함한다.
+	 */
+	public String getStatistics() {
+		String statistics = "clusters: " + pointCount + ", lookups: " + cellCount + ", dedup ratio: " + String.format("%.2f", getDeduplicationRatio())
+			+ ", snapped: " + snappedCount;
+		if(checkedCount > 0) statistics += ", relabeled: " + relabeledCount + "/" + checkedCount;
+		return statistics;
+	}
+
+	/**
+	 * 다른 ClusterGeocoder의 통계를 이 객체의 통계에 더한다. 여러 스레드에서 각자 ClusterGeocoder를 사용할 때 합계를 구하기 위해 사용한다.
+	 * @param other 통계를 더할 ClusterGeocoder. 실행 중이 아니어야 한다.
+	 */
+	public synchronized void addStatistics(ClusterGeocoder other) {
+		pointCount     += other.pointCount;
+		cellCount      += other.cellCount;
+		snappedCount   += other.snappedCount;
+		checkedCount   += other.checkedCount;
+		relabeledCount += other.relabeledCount;
+	}
+
+	/**
+	 * 추가된 사용자와 클러스터를 모두 지운다. 격자 칸 개수 등의 통계는 유지된다.
+	 */
+	public void clear() {
+		authors.clear();
+		authorClusters.clear();
+	}
+
+}
@@ -0,0 +1,215 @@
+package com.jackleg.EventFinding;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 위치 정보가 있는 포인트들 사이의 거리를 미리 계산해 두는 distance matrix.
+ * 대칭 행렬이므로 diagonal 위쪽만 float으로 한 배열에 이어서 저장한다. (double[n][n] 대비 1/4 이하의 메모리)
+ * float으로 저장된 거리로 판단이 애매한 경우(threshold와 같은 float 값인 경우 등)에는 좌표로 정확한 거리를 다시 계산하므로,
+ * 이웃 검색과 K-distance의 결과는 double로 계산한 것과 같다.
+ */
+public class DistanceMatrix {
+	// float[]의 최대 길이. 이보다 큰 matrix는 만들 수 없으므로 KdTree를 사용해야 한다.
+	private static final long MAX_ENTRIES = Integer.MAX_VALUE - 8;
+
+	private double[] xs;
+	private double[] ys;
+	private int[] indices;  // matrix slot -> 포인트 index
+	private int[] slots;    // 포인트 index -> matrix slot. 위치 정보가 없으면 -1.
+	private float[] distances;
+
+	/**
+	 * 포인트 n개의 distance matrix에 필요한 메모리를 추정한다.
+	 * @param n 위치 정보가 있는 포인트의 개수.
+	 * @return 추정 메모리. (byte)
+	 */
+	public static long estimateBytes(int n) {
+		return entries(n) * 4L;
+	}
+
+	/**
+	 * @param n 위치 정보가 있는 포인트의 개수.
+	 * @return 포인트 n개의 distance matrix를 배열 하나로 만들 수 있으면 true, 그렇지 않으면 false.
+	 */
+	public static boolean canAllocate(int n) {
+		return entries(n) <= MAX_ENTRIES;
+	}
+
+	private static long entries(int n) {
+		return (long)n * (n - 1) / 2;
+	}
+
+	/**
+	 * constructor. 좌표가 NaN인 포인트(위치 정보가 없는 이미지)는 matrix에 포함하지 않는다.
+	 * @param xs 포인트들의 x 좌표.
+	 * @param ys 포인트들의 y 좌표.
+	 * @param pool 거리를 계산할 때 사용할 ForkJoinPool. null이면 호출한 스레드에서 계산한다.
+	 */
+	public DistanceMatrix(double[] xs, double[] ys, ForkJoinPool pool) {
+		this.xs    = xs;
+		this.ys    = ys;
+		this.slots = new int[xs.length];
+
+		IntList geoIndices = new IntList();
+		for(int i=0;i<xs.length;i++) {
+			if(Double.isNaN(xs[i]) || Double.isNaN(ys[i])) {
+				slots[i] = -1;
+			}
+			else {
+				slots[i] = geoIndices.size();
+				geoIndices.add(i);
+			}
+		}
+
+		indices = new int[geoIndices.size()];
+		for(int i=0;i<indices.length;i++) indices[i] = geoIndices.get(i);
+
+		final int n = indices.length;
+		if(canAllocate(n) == false) throw new IllegalArgumentException("too many points for distance matrix: " + n);
+		distances = new float[(int)entries(n)];
+
+		// slot row 단위로 나누어 계산한다. row s의 원소들은 배열에서 연속된 구간이므로 작업끼리 겹치지 않는다.
+		EfUtility.parallelFor(pool, 0, n, 32, new EfUtility.RangeBody() {
+			@Override
+			public void run(int from, int to) {
+				for(int s=from;s<to;s++) {
+					int base = rowBase(s);
+					int i    = indices[s];
+					for(int t=s+1;t<n;t++) {
+						distances[base + t - s - 1] = (float)exactDistance(i, indices[t]);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return slot row s에서 (s, s+1) 원소의 배열 위치.
+	 */
+	private int rowBase(int s) {
+		return (int)((long)s * (2L * indices.length - s - 1) / 2);
+	}
+
+	private double exactDistance(int i, int j) {
+		return EfUtility.distance(xs[i], ys[i], xs[j], ys[j]);
+	}
+
+	/**
+	 * 주어진 포인트와의 거리가 threshold보다 작은 포인트들의 index를 index 순으로 result에 추가한다. 자기 자신은 제외한다.
+	 * @param pointIndex 이웃을 구할 포인트의 index.
+	 * @param threshold 거리 threshold.
+	 * @param result 이웃들의 index가 추가될 리스트.
+	 */
+	public void searchRadius(int pointIndex, double threshold, IntList result) {
+		int s = slots[pointIndex];
+		if(s < 0) return;
+
+		// 저장된 float 값 f와 threshold를 float으로 바꾼 값 tf를 비교한다. 반올림은 순서를 바꾸지 않으므로
+		// f < tf 이면 실제 거리도 threshold보다 작고, f > tf 이면 작지 않다. 같은 경우에만 정확한 거리를 계산한다.
+		float tf = (float)threshold;
+		int n    = indices.length;
+
+		// (t, s), t < s 는 row t에 저장되어 있다.
+		int position = s - 1;
+		for(int t=0;t<s;t++) {
+			if(isCloser(distances[position], tf, pointIndex, indices[t], threshold)) result.add(indices[t]);
+			position += n - t - 2;
+		}
+
+		position = rowBase(s);
+		for(int t=s+1;t<n;t++, position++) {
+			if(isCloser(distances[position], tf, pointIndex, indices[t], threshold)) result.add(indices[t]);
+		}
+	}
+
+	private boolean isCloser(float distance, float tf, int i, int j, double threshold) {
+		if(distance < tf) return true;
+		if(distance > tf) return false;
+		return exactDistance(i, j) < threshold;
+	}
+
+	/**
+	 * 주어진 포인트에서 k번째로 가까운 포인트까지의 거리(K-distance)를 구한다. 자기 자신(거리 0.0)을 0번째로 센다.
+	 * float 값으로 k번째 값을 quickselect로 찾은 후, 그 값과 같은 float 값을 가진 포인트들만 정확한 거리로 비교한다.
+	 * @param pointIndex K-distance를 구할 포인트의 index.
+	 * @param k K-distance에서 구할 K값.
+	 * @param row 포인트 개수 이상의 길이를 가진 작업용 버퍼. 내용은 덮어쓴다.
+	 * @return K-distance. 포인트에 위치 정보가 없거나, 포인트가 k개 이하라면 NaN.
+	 */
+	public double kDistance(int pointIndex, int k, float[] row) {
+		int s = slots[pointIndex];
+		int n = indices.length;
+		if(s < 0 || k >= n) return Double.NaN;
+		if(k <= 0) return 0.0;
+
+		copyRow(s, row);
+		float kth = select(row, n, k);
+
+		// 반올림은 순서를 바꾸지 않으므로, 정확한 k번째 거리는 float 값이 kth인 포인트들 중에 있다.
+		// quickselect로 row의 순서가 바뀌었으므로 다시 복사한 후, kth보다 작은 개수를 세고 kth와 같은 포인트들만 정확한 거리로 비교한다.
+		copyRow(s, row);
+		int lessCount = 0;
+		int tieCount  = 0;
+		for(int t=0;t<n;t++) {
+			if(row[t] < kth)       lessCount++;
+			else if(row[t] == kth) tieCount++;
+		}
+
+		double[] ties = new double[tieCount];
+		tieCount = 0;
+		for(int t=0;t<n;t++) {
+			if(row[t] == kth) ties[tieCount++] = (t == s) ? 0.0 : exactDistance(indices[s], indices[t]);
+		}
+		Arrays.sort(ties);
+		return ties[k - lessCount];
+	}
+
+	/**
+	 * slot row s의 거리들을 row에 복사한다. row[s]는 자기 자신과의 거리 0.0이다.
+	 */
+	private void copyRow(int s, float[] row) {
+		int n = indices.length;
+
+		int position = s - 1;
+		for(int t=0;t<s;t++) {
+			row[t] = distances[position];
+			position += n - t - 2;
+		}
+
+		row[s] = 0.0f;
+		System.arraycopy(distances, rowBase(s), row, s + 1, n - s - 1);
+	}
+
+	/**
+	 * data[0, length) 구간에서 k번째로 작은 값을 quickselect로 구한다. 구간의 순서는 바뀐다.
+	 */
+	private static float select(float[] data, int length, int k) {
+		int left  = 0;
+		int right = length - 1;
+
+		while(left < right) {
+			float pivot = data[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+
+			while(i <= j) {
+				while(data[i] < pivot) i++;
+				while(data[j] > pivot) j--;
+				if(i <= j) {
+					float temp = data[i];
+					data[i] = data[j];
+					data[j] = temp;
+					i++;
+					j--;
+				}
+			}
+
+			if(k <= j)      right = j;
+			else if(k >= i) left  = i;
+			else            break;
+		}
+
+		return data[k];
+	}
+}
@@ -1,20 +1,63 @@
 package com.jackleg.EventFinding;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileReader;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 public class EfDriver {
-	public static HashMap<Point, String> countryMap = new HashMap<Point, String>();
-	public static HashMap<Point, String> acFirstMap = new HashMap<Point, String>();
-	public static HashMap<Point, String> acSecondMap = new HashMap<Point, String>();
+	// reverse-geocoding API call을 대신하는 좌표별 지명 테이블. 읽은 후에는 여러 사용자를 처리하는 스레드에서 동시에 검색한다.
+	public static GeoTable geoTable = new GeoTable();
+	
+	// local cluster의 대표 좌표에 대해 reverse-geocoding을 수행할 geocoder. main에서 sample geo file이나 HTTP 서버를 delegate로 만든다.
+	public static CachingReverseGeocoder reverseGeocoder = null;
+	public static int geocoderCacheCapacity  = 100000;
+	public static double geocoderCellSize    = 0.0; // 0이면 좌표가 같을 때만 cache를 공유한다. 0보다 크면 칸의 중심으로 요청한다.
+	public static int geocoderMaxConcurrency = 8;
+	public static int geocoderBatchSize      = 100;
+	public static int geocoderTimeoutMillis  = 10000;
+	
+	// 실행이 바뀌어도 reverse-geocoding 결과를 다시 사용하기 위한 cache 파일. (e.g. "./sample/geocode.cache") null이면 사용하지 않는다.
+	// 파일에는 결과를 만든 geocoder(서버 주소 또는 sample geo file의 경로와 수정 시각)가 기록되며, 다른 geocoder의 파일은 버리고 새로 만든다.
+	public static String geocodeCacheFile       = null;
+	public static long geocodeMissTtlMillis     = 7L * 24 * 60 * 60 * 1000; // 찾을 수 없었던 좌표를 다시 요청하기까지의 시간
+	public static double geocodeCompactionRatio = 0.5;
+	
+	// 여러 사용자의 local cluster 대표 좌표를 합쳐 요청할 격자 칸의 크기. (degree, 0.001은 약 100m)
+	// 0이면 좌표가 같은 클러스터끼리만 합치며, 결과는 클러스터마다 따로 요청할 때와 같다.
+	// 0보다 크면 요청 수는 더 줄지만, 같은 칸의 클러스터들이 칸 중심의 지명을 함께 받으므로 지명이 바뀔 수 있다. (ClusterGeocoder 참고)
+	// 이 경우 sample geo file은 칸의 중심에서 칸 안의 지명을 찾을 수 있도록 허용 거리를 넓혀 읽는다. (sampleGeoTolerance)
+	// geocodeDedupLabelCheck이면 지명이 실제로 바뀐 클러스터 개수를 dedup 통계에 함께 출력한다.
+	public static double geocodeDedupCellSize    = 0.0;
+	public static boolean geocodeDedupLabelCheck = false;
+	
 	public static String sampleGeoFile = "./sample/sample.geo.txt";
 	
+	// sort 모드에서 정렬에 사용할 메모리와 임시 디렉토리. (null이면 시스템 임시 디렉토리)
+	public static long sortBufferBytes = 256L * 1024 * 1024;
+	public static File sortTempDir     = null;
+	
+	// AuthorPipeline 설정. cluster, detect 단계의 스레드 수는 main의 workers이다. (AuthorPipeline 참고)
+	public static int pipelineGeocodeWorkers   = 2;
+	public static int pipelineRenderWorkers    = 2;
+	public static int pipelineQueueCapacity    = 32;
+	public static int pipelineMaxInFlight      = 128;
+	public static int pipelineGeocodeBatchSize = 64;
+	
+	// 사용자 scheduling 설정. (AuthorCostModel 참고) 추정 비용이 큰 사용자부터 처리하며, costLargeAuthorNanos 이상인 사용자는 병렬로 클러스터링한다.
+	// costReportFile이 null이 아니면 모든 사용자의 추정 비용과 실제 비용을 출력한다. 처리 순서만 바뀌며 출력은 같다.
+	public static boolean costScheduling        = false;
+	public static double costPairNanos          = 500.0; // 샘플 데이터에서 보정된 값
+	public static double costLargeAuthorNanos   = 200.0 * 1000 * 1000;
+	public static int costReportLimit           = 10;
+	public static String costReportFile         = null;
+	
 	public static void writeSampleGeoFile(ArrayList<Author> authors) throws IOException {
 		BufferedWriter simFile = new BufferedWriter(new FileWriter(sampleGeoFile));
 		
@@ -36,122 +79,338 @@ public class EfDriver {
 	}
 	
 	public static void loadSampleGeoFile() throws IOException {
-		BufferedReader reader = new BufferedReader(new FileReader(sampleGeoFile));
-		String line;
+		geoTable = GeoTable.load(sampleGeoFile, sampleGeoTolerance());
+	}
+	
+	/**
+	 * @return sample geo file을 검색할 때의 허용 거리. 격자 칸의 중심으로 요청하므로 칸의 대각선 절반까지 허용한다.
+	 */
+	private static double sampleGeoTolerance() {
+		return Math.max(GeoTable.DEFAULT_TOLERANCE, Math.max(geocodeDedupCellSize, geocoderCellSize) * Math.sqrt(0.5));
+	}
+	
+	/**
+	 * 처음 요청이 있을 때 sample geo file을 읽어, geoTable로 reverse-geocoding API call을 시뮬레이션하는 ReverseGeocoder.
+	 * 모든 좌표가 cache 파일에 있다면 sample geo file을 읽지 않는다.
+	 */
+	private static class SampleGeocoder implements ReverseGeocoder {
+		private boolean loaded = false;
 		
-		while((line=reader.readLine()) != null) {
-			String[] tokens = line.split("\t");
-			
-			double x = Double.parseDouble(tokens[0]);
-			double y = Double.parseDouble(tokens[1]);
-			String acFirst  = tokens[2];
-			String acSecond = tokens[3];
-			String country  = tokens[4];
-			
-			Point point = new Point(x, y);
-			
-			countryMap.put(point, country);
-			acFirstMap.put(point, acFirst);
-			acSecondMap.put(point, acSecond);
+		private synchronized GeoTable getTable() throws IOException {
+			if(loaded == false) {
+				loadSampleGeoFile();
+				loaded = true;
+			}
+			return geoTable;
+		}
+		
+		@Override
+		public GeoTable.Place reverseGeocode(Point point) throws IOException {
+			return getTable().reverseGeocode(point);
+		}
+		
+		@Override
+		public List<GeoTable.Place> reverseGeocode(List<Point> points) throws IOException {
+			return getTable().reverseGeocode(points);
+		}
+	}
+	
+	/**
+	 * 사용자 한 명에 대해 클러스터링, reverse-geocoding 시뮬레이션, 위치 정보 전파, 이벤트 찾기, 결과 출력을 수행한다.
+	 * 사용자들은 서로 독립적이므로 여러 스레드에서 동시에 호출할 수 있다.
+	 * 여러 사용자를 처리할 때는 main처럼 AuthorPipeline으로 단계를 나누어 처리하면 단계들이 동시에 진행되고, reverse-geocoding 요청을 사용자들 사이에서 합칠 수 있다.
+	 * 콘솔에 출력할 내용은 바로 출력하지 않고 반환하므로, 호출하는 쪽에서 사용자 순서대로 출력해야 한다.
+	 * @param author 처리할 사용자.
+	 * @param outputdir 결과 파일을 출력할 디렉토리.
+	 * @return 콘솔(System.err)에 출력할 로그.
+	 * @throws IOException
+	 */
+	public static String processAuthor(Author author, String outputdir) throws IOException {
+		/* 위치 정보가 충분히 있는 경우의 일반적인 실행 순서 start */
+//		author.doLocalClustering(10);
+//		
+//		// 정방향, 역방향으로 위치 정보 전파
+//		author.propagateLocalInfo();
+//
+//		author.findEvents();
+//		author.printEventCandidates(outputdir);
+		/* 위치 정보가 충분히 있는 경우의 일반적인 실행 순서 end */
+		
+		/* 위치 정보가 없는 경우의 시뮬레이션 start */
+		ClusterGeocoder clusterGeocoder = new ClusterGeocoder(reverseGeocoder, geocodeDedupCellSize);
+		clusterGeocoder.setLabelCheck(geocodeDedupLabelCheck);
+		clusterGeocoder.add(author, clusterAuthor(author));
+		clusterGeocoder.run();
+		
+		return findAuthorEvents(author, outputdir);
+		/* 위치 정보가 없는 경우의 시뮬레이션 end */
+		
+		// 폐기함
+		/* 여행 이벤트 찾기 로직 시작 */
+//		author.doLocalClustering(10);
+//
+//		// 정방향, 역방향으로 위치 정보 전파
+//		author.propagateLocalInfo();
+//
+//		ArrayList<EventCluster> events = author.findTravelEvents();
+//		if(events != null) {
+//			System.err.println("events for " + author.getName());
+//			for(EventCluster event : events) {
+//				System.err.println("[" + event.getRepLocation() + "][" + event.getRange() +"] " + event.getImagesCount() + "장");
+//			}
+//		}
+//		author.printEventCandidates(outputdir);
+		/* 여행 이벤트 찾기 로직 끝 */
+	}
+	
+	/**
+	 * 시뮬레이션 1단계. 사용자의 local cluster를 만들고, 시뮬레이션을 위해 주소, 나라 정보를 삭제한다.
+	 * 반환된 클러스터는 ClusterGeocoder로 reverse-geocoding 한 후 findAuthorEvents()를 호출한다.
+	 * @param author 처리할 사용자.
+	 * @return author의 local cluster. 클러스터를 만들 수 없다면 null.
+	 */
+	public static ArrayList<LocalCluster> clusterAuthor(Author author) {
+		ArrayList<LocalCluster> localClusters = author.doLocalClustering(10);
+		
+		author.clearLocalInfo(); // 시뮬레이션을 위해 주소, 나라 정보를 삭제
+		return localClusters;
+	}
+	
+	/**
+	 * 시뮬레이션 3단계. local cluster의 위치 정보를 전파하고 이벤트를 찾아 결과 파일을 출력한다.
+	 * @param author 처리할 사용자. local cluster의 reverse-geocoding이 끝나 있어야 한다.
+	 * @param outputdir 결과 파일을 출력할 디렉토리.
+	 * @return 콘솔(System.err)에 출력할 로그.
+	 * @throws IOException
+	 */
+	public static String findAuthorEvents(Author author, String outputdir) throws IOException {
+		String log = detectAuthorEvents(author);
+		renderAuthor(author, outputdir);
+		
+		return log;
+	}
+	
+	/**
+	 * findAuthorEvents()의 앞부분. local cluster의 위치 정보를 전파하고 이벤트를 찾는다.
+	 * @param author 처리할 사용자. local cluster의 reverse-geocoding이 끝나 있어야 한다.
+	 * @return 콘솔(System.err)에 출력할 로그.
+	 */
+	public static String detectAuthorEvents(Author author) {
+		StringBuilder log = new StringBuilder();
+		log.append("find event for ").append(author.getName()).append("\n");
+		
+		// 정방향, 역방향으로 위치 정보 전파
+		author.propagateLocalInfo();
+
+		ArrayList<EventCluster> events = author.findEvents();
+		if(events != null) {
+			log.append("events for ").append(author.getName()).append("\n");
+			for(EventCluster event : events) {
+				log.append("[" + event.getRepLocation() + "][" + event.getRange() +"] " + event.getImagesCount() + "장").append("\n");
+			}
 		}
 		
-		reader.close();
+		return log.toString();
+	}
+	
+	/**
+	 * findAuthorEvents()의 뒷부분. 이벤트 후보들을 사용자의 결과 파일로 출력한다.
+	 * @param author 처리할 사용자. detectAuthorEvents()가 끝나 있어야 한다.
+	 * @param outputdir 결과 파일을 출력할 디렉토리.
+	 * @throws IOException
+	 */
+	public static void renderAuthor(Author author, String outputdir) throws IOException {
+		author.printEventCandidates(outputdir, author.getName() + ".html");
+	}
+	
+	/**
+	 * 사용자별로 모여 있는 파일을 한 사용자씩 읽어 pipeline으로 처리한다.
+	 * 처리가 끝난 사용자는 바로 버리므로, 메모리에는 pipeline에서 진행 중인 사용자들만 있다.
+	 * @param inputfilename 입력 파일.
+	 * @param sort true이면 입력 파일을 먼저 LineDataSorter로 정렬한다. 사용자별로 모여 있지 않은 파일에 사용한다.
+	 * @param pipeline 사용자들을 처리할 pipeline.
+	 * @param indexWriter index 파일.
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	private static void streamAuthors(String inputfilename, boolean sort, AuthorPipeline pipeline, Writer indexWriter) throws IOException, ParseException {
+		String groupedFilename = inputfilename;
+		File sortedFile = null;
+		
+		try {
+			if(sort) {
+				System.err.println("sort data file: " + inputfilename);
+				sortedFile = File.createTempFile("ef-sorted-", ".tsv", sortTempDir);
+				sortedFile.deleteOnExit();
+				
+				LineDataSorter sorter = new LineDataSorter(sortTempDir, sortBufferBytes);
+				sorter.sort(inputfilename, sortedFile.getPath());
+				System.err.println("sorted lines: " + sorter.getLineCount() + " (" + sorter.getRunCount() + " runs)");
+				groupedFilename = sortedFile.getPath();
+			}
+			
+			System.err.println("stream data file: " + groupedFilename);
+			AuthorReader reader = new AuthorReader(groupedFilename);
+			try {
+				pipeline.run(reader, indexWriter);
+				
+				System.err.println("line loaded: " + reader.getLineCount());
+				System.err.println("loaded authors: " + reader.getAuthorCount());
+			}
+			finally {
+				reader.close();
+			}
+		}
+		finally {
+			if(sortedFile != null) sortedFile.delete();
+		}
 	}
 	
 	public static void main(String[] args) throws IOException, ParseException {
 		if(args.length < 2) {
-			System.err.println("usage: java TossDriver <inputfile> <outputfile>");
+			System.err.println("usage: java TossDriver <inputfile> <outputfile> [workers] [geocoder] [mode]");
 			System.err.println("    inputfile : input file. see. TossUtility#loadLineData");
 			System.err.println("    outputdir : output directory where to put result files.");
+			System.err.println("    workers   : number of authors processed in parallel. default 1.");
+			System.err.println("    geocoder  : reverse-geocoding server url. see. GeoStandInServer. '-' or default: local sample geo file.");
+			System.err.println("    mode      : batch  - load whole input file first. (default)");
+			System.err.println("                stream - read input file grouped by author one author at a time.");
+			System.err.println("                sort   - sort input file by author on disk, then stream it.");
 			System.err.println("");
 			System.exit(1);
 		}
 		
 		String inputfilename  = args[0];
 		String outputfilename = args[1];
+		int workers = (args.length >= 3) ? Integer.parseInt(args[2]) : 1;
+		String geocoderUrl = (args.length >= 4 && "-".equals(args[3]) == false) ? args[3] : null;
+		String mode = (args.length >= 5) ? args[4] : "batch";
+		if("batch".equals(mode) == false && "stream".equals(mode) == false && "sort".equals(mode) == false) {
+			throw new IllegalArgumentException("unknown mode: " + mode);
+		}
 	
-		System.err.println("load data file: " + inputfilename);
-		ArrayList<Author> authors = EfUtility.loadLineData(inputfilename);
+		ArrayList<Author> authors = null;
+		if("batch".equals(mode)) {
+			System.err.println("load data file: " + inputfilename);
+			authors = EfUtility.loadLineData(inputfilename);
+		}
 
 		//writeSampleGeoFile(authors); // reverse-geocoding API call을 시뮬레이션하기 위한 geo 정보 sample file 생성
-		loadSampleGeoFile(); // reverse-geocoding API call을 시뮬레이션하기 위해 미리 생성한 geo 정보 sample file을 읽는다.
-		
-		// index 파일 header
-		BufferedWriter indexWriter = new BufferedWriter(new FileWriter(outputfilename + "/index.html"));
-		indexWriter.write("<meta charset=\"utf-8\"/>\n");
-		indexWriter.write("<h3>toss event 데모 </h3>");
+		// reverse-geocoding 서버가 주어지지 않았다면, API call을 시뮬레이션하기 위해 미리 생성한 geo 정보 sample file을 읽어 사용한다.
+		// sample geo file은 cache 파일에 없는 좌표가 있을 때 처음 한 번만 읽는다.
+		ReverseGeocoder geocoder = null;
+		String geocoderSource    = null;
+		if(geocoderUrl != null) {
+			geocoder       = new HttpReverseGeocoder(geocoderUrl, geocoderBatchSize, geocoderTimeoutMillis);
+			geocoderSource = "http " + geocoderUrl;
+		}
+		else {
+			File sampleFile = new File(sampleGeoFile);
+			geocoder        = new SampleGeocoder();
+			geocoderSource  = "sample " + sampleFile.getAbsolutePath() + " " + sampleFile.lastModified() + " " + sampleGeoTolerance();
+		}
 		
-		for(Author author : authors) {
-			System.err.println("find event for " + author.getName());
+		// pipeline의 단계가 실패해도 index 파일을 flush하고, cache 파일의 lock과 geocoder의 스레드를 정리한다.
+		PersistentGeocodeCache geocodeCache = null;
+		BufferedWriter indexWriter      = null;
+		BufferedWriter costReportWriter = null;
+		AuthorPipeline pipeline         = null;
+		AuthorCostModel costModel       = null;
+		try {
+			if(geocodeCacheFile != null) {
+				geocodeCache = new PersistentGeocodeCache(geocodeCacheFile, geocoder, geocoderSource, geocoderCellSize, geocodeMissTtlMillis, geocodeCompactionRatio);
+				geocoder     = geocodeCache;
+			}
+			reverseGeocoder = new CachingReverseGeocoder(geocoder, geocoderCacheCapacity, geocoderCellSize, geocoderMaxConcurrency, geocoderBatchSize);
 			
-			/* 위치 정보가 충분히 있는 경우의 일반적인 실행 순서 start */
-//			author.doLocalClustering(10);
-//			
-//			// 정방향, 역방향으로 위치 정보 전파
-//			author.propagateLocalInfo(false);
-//			author.propagateLocalInfo(true);
-//
-//			author.findEvents();
-//			author.printEventCandidates(outputfilename);
-			/* 위치 정보가 충분히 있는 경우의 일반적인 실행 순서 end */
+			// index 파일 header
+			indexWriter = new BufferedWriter(new FileWriter(outputfilename + "/index.html"));
+			indexWriter.write("<meta charset=\"utf-8\"/>\n");
+			indexWriter.write("<h3>toss event 데모 </h3>");
 			
-			/* 위치 정보가 없는 경우의 시뮬레이션 start */
-			ArrayList<LocalCluster> localClusters = author.doLocalClustering(10);
+			// 사용자들을 단계별 스레드 풀의 pipeline으로 처리한다. CPU 작업인 cluster, detect 단계는 workers개의 스레드를 사용한다.
+			pipeline = new AuthorPipeline(outputfilename, reverseGeocoder, geocodeDedupCellSize);
+			pipeline.setClusterWorkers(workers);
+			pipeline.setGeocodeWorkers(pipelineGeocodeWorkers);
+			pipeline.setDetectWorkers(workers);
+			pipeline.setRenderWorkers(pipelineRenderWorkers);
+			pipeline.setQueueCapacity(pipelineQueueCapacity);
+			pipeline.setMaxInFlight(pipelineMaxInFlight);
+			pipeline.setGeocodeBatchSize(pipelineGeocodeBatchSize);
+			pipeline.setGeocodeLabelCheck(geocodeDedupLabelCheck);
 			
-			author.clearLocalInfo(); // 시뮬레이션을 위해 주소, 나라 정보를 삭제
-			int reverseGeoApiCallCount = 0;
+			if(costScheduling) {
+				costModel = new AuthorCostModel(costPairNanos, costLargeAuthorNanos, costReportLimit);
+				if(costReportFile != null) {
+					costReportWriter = new BufferedWriter(new FileWriter(costReportFile));
+					costModel.setReportWriter(costReportWriter);
+				}
+				pipeline.setCostModel(costModel);
+			}
 			
-			if(localClusters != null) {
-				for(LocalCluster localCluster : localClusters) {
-					ImageEntity centerImage = localCluster.getImageForApproxRG(); // 클러스터에서 reverse-geocoding을 위해 center와 가장 가까운 이미지를 얻음
-					
-					String country = countryMap.get(centerImage.getPoint()); // reverse-geocoding을 대신해서 미리 만들어 둔 나라, 도시 맵을 이용.
-					String acFirst = acFirstMap.get(centerImage.getPoint());
-					String acSecond = acSecondMap.get(centerImage.getPoint());
+			if(authors != null) {
+				final ArrayList<Author> loadedAuthors = authors;
+				authors = null;
+				
+				// 이미 모든 사용자를 읽었으므로, cost model을 사용하면 전체 사용자를 추정 비용이 큰 순서로 넣는다.
+				// 진행 중인 사용자 수는 그대로 pipelineMaxInFlight로 제한되며, 출력은 원래 순서대로 한다.
+				final ArrayList<Integer> order = new ArrayList<Integer>(loadedAuthors.size());
+				for(int i=0;i<loadedAuthors.size();i++) order.add(i);
+				if(costModel != null) {
+					final double[] predicted = new double[loadedAuthors.size()];
+					for(int i=0;i<predicted.length;i++) predicted[i] = costModel.predict(loadedAuthors.get(i));
 					
-					localCluster.setApproxLocalInfo(acFirst, acSecond, country);
-					reverseGeoApiCallCount++;
+					// stable sort이므로 추정 비용이 같으면 원래 순서이다.
+					Collections.sort(order, new Comparator<Integer>() {
+						@Override
+						public int compare(Integer a, Integer b) {
+							return Double.compare(predicted[b], predicted[a]);
+						}
+					});
 				}
+				
+				pipeline.run(new AuthorPipeline.OrderedSource() {
+					private int next     = 0;
+					private int sequence = -1;
+					
+					@Override
+					public Author next() {
+						if(next >= order.size()) return null;
+						
+						sequence      = order.get(next++);
+						Author author = loadedAuthors.get(sequence);
+						loadedAuthors.set(sequence, null); // 처리가 끝난 사용자를 버릴 수 있도록 리스트에서 뺀다.
+						return author;
+					}
+					
+					@Override
+					public int getSequence() { return sequence; }
+				}, indexWriter);
 			}
-			author.setReverseGeoApiCallCount(reverseGeoApiCallCount);
-			
-			// 정방향, 역방향으로 위치 정보 전파
-			author.propagateLocalInfo(false);
-			author.propagateLocalInfo(true);
-
-			ArrayList<EventCluster> events = author.findEvents();
-			if(events != null) {
-				System.err.println("events for " + author.getName());
-				for(EventCluster event : events) {
-					System.err.println("[" + event.getRepLocation() + "][" + event.getRange() +"] " + event.getImagesCount() + "장");
+			else {
+				streamAuthors(inputfilename, "sort".equals(mode), pipeline, indexWriter);
+			}
+		}
+		finally {
+			try {
+				try {
+					if(indexWriter != null) indexWriter.close();
+				}
+				finally {
+					if(costReportWriter != null) costReportWriter.close();
 				}
 			}
-			
-			String authorFilename = author.getName() + ".html";
-			indexWriter.write("<a href=\"" + authorFilename + "\">" + author.getName() + "</a><br/>");
-			author.printEventCandidates(outputfilename, authorFilename);
-			/* 위치 정보가 없는 경우의 시뮬레이션 end */
-			
-			// 폐기함
-			/* 여행 이벤트 찾기 로직 시작 */
-//			author.doLocalClustering(10);
-//
-//			// 정방향, 역방향으로 위치 정보 전파
-//			author.propagateLocalInfo(false);
-//			author.propagateLocalInfo(true);
-//
-//			ArrayList<EventCluster> events = author.findTravelEvents();
-//			if(events != null) {
-//				System.err.println("events for " + author.getName());
-//				for(EventCluster event : events) {
-//					System.err.println("[" + event.getRepLocation() + "][" + event.getRange() +"] " + event.getImagesCount() + "장");
-//				}
-//			}
-//			author.printEventCandidates(outputfilename);
-			/* 여행 이벤트 찾기 로직 끝 */
+			finally {
+				if(reverseGeocoder != null) reverseGeocoder.close();
+				if(geocodeCache != null)    geocodeCache.close();
+			}
 		}
 		
-		indexWriter.close();
+		System.err.print(pipeline.getStatistics());
+		if(costModel != null) System.err.print(costModel.getReport());
+		System.err.println("reverse-geocoder dedup " + pipeline.getGeocodeStatistics().getStatistics());
+		System.err.println("reverse-geocoder " + reverseGeocoder.getStatistics());
+		if(geocodeCache != null) System.err.println("reverse-geocoder cache file " + geocodeCache.getStatistics());
 		System.err.println("done.");
 	}
-}
\ No newline at end of file
+}
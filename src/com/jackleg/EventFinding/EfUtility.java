@@ -1,20 +1,19 @@
 package com.jackleg.EventFinding;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Date;
-import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.commons.lang3.ArrayUtils;
 
@@ -50,6 +49,43 @@ public class EfUtility {
 		public double value;
 	}
 	
+	/**
+	 * parallelFor()에서 [from, to) 구간의 작업을 수행하기 위한 인터페이스.
+	 */
+	public static interface RangeBody {
+		public void run(int from, int to);
+	}
+	
+	/**
+	 * 구간을 반으로 나누어 가며 ForkJoinPool에서 RangeBody를 수행하는 작업.
+	 */
+	private static class RangeAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final RangeBody body;
+		private final int from;
+		private final int to;
+		private final int grain;
+		
+		public RangeAction(RangeBody body, int from, int to, int grain) {
+			this.body  = body;
+			this.from  = from;
+			this.to    = to;
+			this.grain = grain;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from <= grain) {
+				body.run(from, to);
+				return;
+			}
+			
+			int mid = (from + to) >>> 1;
+			invokeAll(new RangeAction(body, from, mid, grain), new RangeAction(body, mid, to, grain));
+		}
+	}
+	
 	public static final int DAY1_IN_MILLISECONDS = 24 * 60 * 60 * 1000;
 	public static final int DAY7_IN_MILLISECONDS = 7 * DAY1_IN_MILLISECONDS;
 	public static final int DAY1_IN_SECONDS = 24 * 60 * 60;
@@ -57,6 +93,12 @@ public class EfUtility {
 	public static final int MIN30_IN_SECONDS = 30 * 60;
 	public static final int MIN10_IN_SECONDS = 10 * 60;
 	
+	// 날짜/시각 문자열을 해석하거나 출력할 때 사용할 time zone. 입력 데이터의 시각은 이 time zone의 시각으로 간주한다.
+	private static volatile TimeZone timeZone = TimeZone.getDefault();
+	
+	public static void setTimeZone(TimeZone zone) { timeZone = zone; }
+	public static TimeZone getTimeZone() { return timeZone; }
+	
 	/**
 	 * point a, b 사이의 euclidean distance를 계산한다.
 	 * @param a
@@ -65,7 +107,33 @@ public class EfUtility {
 	 */
 	public static double distance(Point a, Point b) {
 		if(a == null || b == null) return Double.NaN;
-		return Math.sqrt(Math.pow(a.getX()-b.getX(), 2.0) + Math.pow(a.getY()-b.getY(), 2.0));
+		return distance(a.getX(), a.getY(), b.getX(), b.getY());
+	}
+	
+	/**
+	 * 좌표 (ax, ay), (bx, by) 사이의 euclidean distance를 계산한다.
+	 * KdTree 등에서 Point 객체 없이 계산할 때 사용하며, distance(Point, Point)와 항상 같은 값을 반환한다.
+	 * @return 두 좌표의 euclidean distance
+	 */
+	public static double distance(double ax, double ay, double bx, double by) {
+		return Math.sqrt(Math.pow(ax-bx, 2.0) + Math.pow(ay-by, 2.0));
+	}
+	
+	/**
+	 * [from, to) 구간을 grain 크기 이하의 작은 구간들로 나누어 pool에서 병렬로 수행한다. 모든 구간이 끝날 때까지 기다린다.
+	 * @param pool 작업을 수행할 ForkJoinPool. null이면 호출한 스레드에서 전체 구간을 한 번에 수행한다.
+	 * @param from 구간의 시작. (inclusive)
+	 * @param to 구간의 끝. (exclusive)
+	 * @param grain 더 이상 나누지 않을 구간의 크기.
+	 * @param body 각 구간에서 수행할 작업.
+	 */
+	public static void parallelFor(ForkJoinPool pool, int from, int to, int grain, RangeBody body) {
+		if(pool == null || to - from <= grain) {
+			if(from < to) body.run(from, to);
+			return;
+		}
+		
+		pool.invoke(new RangeAction(body, from, to, Math.max(grain, 1)));
 	}
 	
 	/**
@@ -113,36 +181,111 @@ public class EfUtility {
 		return median;
 	}
 	
+	/**
+	 * data[from, to) 구간에서 k번째로 작은 값을 quickselect로 구한다. 전체 정렬 없이 평균 O(n)에 구할 수 있다.
+	 * 수행 후 구간의 원소 순서는 바뀌며, k번째 위치에는 k번째 값이, 그 앞에는 작거나 같은 값이, 뒤에는 크거나 같은 값이 온다.
+	 * @param data 값을 구할 데이터. NaN이 없어야 한다.
+	 * @param from 구간의 시작 index. (inclusive)
+	 * @param to 구간의 끝 index. (exclusive)
+	 * @param k 구간의 시작부터 0부터 센 순서.
+	 * @return 구간을 정렬했을 때 data[from+k]에 위치할 값.
+	 */
+	public static double selectKth(double[] data, int from, int to, int k) {
+		int left   = from;
+		int right  = to - 1;
+		int target = from + k;
+		
+		while(left < right) {
+			double pivot = data[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+			
+			while(i <= j) {
+				while(data[i] < pivot) i++;
+				while(data[j] > pivot) j--;
+				if(i <= j) {
+					double temp = data[i];
+					data[i] = data[j];
+					data[j] = temp;
+					i++;
+					j--;
+				}
+			}
+			
+			if(target <= j)      right = j;
+			else if(target >= i) left  = i;
+			else                 break;
+		}
+		
+		return data[target];
+	}
+	
 	/**
 	 * 주어진 데이터의 quantile 값들을 계산. min, 25%, 50%, 75%, max에 위치한 값들을 반환한다. 
 	 * @param data quantile값을 구하기 위한 데이터
 	 * @return data의 quantile 값들
 	 */
 	public static Quantiles calculateQuantiles(Double[] data) {
-		Arrays.sort(data);
-
-		Quantiles result = new Quantiles();
+		return calculateQuantiles(ArrayUtils.toPrimitive(data));
+	}
+	
+	/**
+	 * 주어진 데이터의 quantile 값들을 계산. min, 25%, 50%, 75%, max에 위치한 값들을 반환한다.
+	 * q2는 전체의 중앙값, q1과 q3는 중앙값을 제외한 아래/위 절반의 중앙값이다. (데이터 개수가 짝수이면 정확히 반씩 나눈다.)
+	 * 정렬하지 않고, 필요한 순서의 값들만 작은 순서부터 quickselect로 구한다. 앞에서 구한 위치보다 뒤쪽 구간만 다시 보므로 평균 O(n)이다.
+	 * @param data quantile값을 구하기 위한 데이터. 2개 이상이어야 하며, 원소의 순서는 바뀐다.
+	 * @return data의 quantile 값들
+	 */
+	public static Quantiles calculateQuantiles(double[] data) {
+		int n    = data.length;
+		int half = n / 2; // 아래/위 절반의 크기. n이 홀수이면 중앙값은 어느 쪽에도 포함되지 않는다.
 		
-		result.min = data[0];
-		result.max = data[data.length - 1];
+		RankSelector selector = new RankSelector(data);
+		Quantiles result      = new Quantiles();
 		
-		DataIndex median = calculateMedian(data);
+		result.min = selector.select(0);
+		result.q1  = selector.median(0, half);
+		result.q2  = selector.median(0, n);
+		result.q3  = selector.median(n - half, half);
+		result.max = selector.select(n - 1);
 		
-		// median의 index가 x.5와 같은 식으로 소수점일 수 있으므로, 아래와 같은 방식으로 구해야 한번에 구할 수 있다.
-		// endIndex에 +1 해주는 것은 endIndex가 exclusive하기 때문.
-		int startIndex = 0;
-		int endIndex   = (int)Math.floor(median.index-0.5) + 1;
-		DataIndex q1   = calculateMedian(ArrayUtils.subarray(data, startIndex, endIndex));
+		return result;
+	}
+	
+	/**
+	 * 배열에서 순서(rank)가 작은 값부터 차례로 구하기 위한 클래스.
+	 * rank번째 값을 구하면 그 앞에는 작거나 같은 값들만 남으므로, 다음 값은 rank 이후 구간에서만 찾는다.
+	 */
+	private static class RankSelector {
+		private double[] data;
+		private int from; // 아직 값을 구하지 않은 구간의 시작. 그 앞의 rank는 이미 제자리에 있다.
 		
-		startIndex   = (int)Math.ceil(median.index+0.5);
-		endIndex     = data.length;
-		DataIndex q3 = calculateMedian(ArrayUtils.subarray(data, startIndex, endIndex));
+		private RankSelector(double[] data) {
+			this.data = data;
+			this.from = 0;
+		}
 		
-		result.q1 = q1.value;
-		result.q2 = median.value;
-		result.q3 = q3.value;
+		/**
+		 * 정렬했을 때 rank 위치에 올 값을 구한다. rank는 이전에 구한 rank보다 작으면 안 된다.
+		 */
+		private double select(int rank) {
+			if(rank < from) return data[rank]; // 이미 구한 rank
+			
+			double value = selectKth(data, from, data.length, rank - from);
+			from = rank + 1;
+			return value;
+		}
 		
-		return result;
+		/**
+		 * 정렬했을 때 [start, start+length) 구간의 중앙값. calculateMedian()과 같은 값을 반환한다.
+		 */
+		private double median(int start, int length) {
+			if(length % 2 == 1) return select(start + length / 2);
+			
+			double value1 = select(start + length / 2 - 1);
+			double value2 = select(start + length / 2);
+			return (value1 + value2)/2.0;
+		}
 	}
 	
 	/**
@@ -153,8 +296,15 @@ public class EfUtility {
 	 * @return 데이터 리스트의 Upper Fence.
 	 */
 	public static double calculateUpperFence(Double[] data) {
-		Arrays.sort(data);
-		
+		return calculateUpperFence(ArrayUtils.toPrimitive(data));
+	}
+	
+	/**
+	 * 데이터 리스트에서 Upper Fence를 계산한다. calculateUpperFence(Double[])과 같으며, 원소의 순서는 바뀐다.
+	 * @param data
+	 * @return 데이터 리스트의 Upper Fence.
+	 */
+	public static double calculateUpperFence(double[] data) {
 		Quantiles quantiles = calculateQuantiles(data);
 		return quantiles.q3 + 1.5 * (quantiles.q3 - quantiles.q1);
 	}
@@ -168,64 +318,201 @@ public class EfUtility {
 	 * @throws ParseException 
 	 */
 	public static ArrayList<Author> loadLineData(String filename) throws IOException, ParseException {
-		HashMap<String, Author> authorMap = new HashMap<String, Author>();
-		BufferedReader reader = new BufferedReader(new FileReader(filename));
-		
-		String line;
-		int lineCount = 0;
-		while((line = reader.readLine()) != null) {
-			String[] tokens = line.split("\t", -1); // 빈 필드가 있을 수 있으므로 limit 값은 음수로 지정.
-		
-			String authorName  = tokens[0];
-			String imageUrl    = tokens[1];
-			String dateTimeStr = tokens[2];
-			
-			Double longitude = null;
-			Double latitude  = null;
-			String formattedAddress    = null;
-			String[] addressComponents = null;
-			String country             = null;
-			try{
-				longitude = Double.valueOf(tokens[3]);
-				latitude  = Double.valueOf(tokens[4]);
-			}
-			catch(NumberFormatException e) { // 위치 정보가 없어 lng/lat 변경시 exception이 발생하는 경우. formattedAddress ~ country는 그대로 null로 남겨둔다.
-				longitude = null;
-				latitude  = null;
-			}
-
-			if(tokens.length >= 6) {
-				if("".equals(tokens[5]) == false) {
-					formattedAddress  = tokens[5];
-					addressComponents = new String[3];
-					addressComponents[0] = tokens[6];
-					addressComponents[1] = tokens[7];
-					addressComponents[2] = tokens[8];
-				}
-				if("".equals(tokens[9]) == false) country = tokens[9];
-			}
-
-			Author author = authorMap.get(authorName);
-			if(author == null) {
-				author = new Author(authorName);
-				authorMap.put(authorName, author);
-			}
-
-			ImageEntity image = new ImageEntity(imageUrl, dateTimeStr, longitude, latitude, formattedAddress, addressComponents, country);
-			author.addImage(image);
+		return loadLineData(filename, Runtime.getRuntime().availableProcessors());
+	}
 
-			lineCount++;
-			if(lineCount % 1000 == 0) System.err.println("line loaded: " + lineCount);
-		}
-		reader.close();
-		
-		ArrayList<Author> resultList = new ArrayList<Author>();
-		for(String key : authorMap.keySet()) { resultList.add(authorMap.get(key)); }
+	/**
+	 * file의 line 데이터를 여러 스레드로 읽어 Author 리스트를 반환. 파일 형식은 loadLineData(String)과 같다.
+	 * 파일을 줄 경계에서 chunk로 나누어 memory-map 한 후, chunk별로 동시에 해석한다. (LineDataLoader 참고)
+	 * @param filename 데이터 파일 이름
+	 * @param threads 파일을 해석할 스레드 개수
+	 * @return Author들의 리스트
+	 * @throws IOException 
+	 * @throws ParseException 
+	 */
+	public static ArrayList<Author> loadLineData(String filename, int threads) throws IOException, ParseException {
+		ArrayList<Author> resultList = new LineDataLoader(filename, threads).load();
 	
 		System.err.println("loaded authors: " + resultList.size());
 		return resultList;
 	}
 
+	/**
+	 * yyyyMMddHHmmss 형태의 날짜/시각 문자열을 epoch milliseconds로 변환한다.
+	 * SimpleDateFormat을 사용하지 않고 고정된 위치의 숫자를 직접 읽으므로, 객체를 만들지 않으며 여러 스레드에서 동시에 호출할 수 있다.
+	 * SimpleDateFormat의 lenient 모드처럼 범위를 넘는 값(e.g. 2월 30일)은 다음 달/날로 넘긴다. 14자 이후의 문자는 무시한다.
+	 * @param text yyyyMMddHHmmss 형태의 문자열. 시각은 getTimeZone()의 시각으로 간주한다.
+	 * @return epoch milliseconds
+	 * @throws ParseException 14자보다 짧거나, 숫자가 아닌 문자가 있는 경우.
+	 */
+	public static long parseDateTime(CharSequence text) throws ParseException {
+		if(text == null || text.length() < 14) throw new ParseException("Unparseable date: \"" + text + "\"", 0);
+		
+		int year   = digit(text, 0) * 1000 + digit(text, 1) * 100 + digit(text, 2) * 10 + digit(text, 3);
+		int month  = digit(text, 4) * 10 + digit(text, 5);
+		int day    = digit(text, 6) * 10 + digit(text, 7);
+		int hour   = digit(text, 8) * 10 + digit(text, 9);
+		int minute = digit(text, 10) * 10 + digit(text, 11);
+		int second = digit(text, 12) * 10 + digit(text, 13);
+		
+		return toEpochMillis(year, month, day, hour, minute, second);
+	}
+	
+	private static int digit(CharSequence text, int index) throws ParseException {
+		char c = text.charAt(index);
+		if(c < '0' || c > '9') throw new ParseException("Unparseable date: \"" + text + "\"", index);
+		return c - '0';
+	}
+	
+	/**
+	 * 바이트 배열에 들어 있는 yyyyMMddHHmmss 형태의 날짜/시각을 epoch milliseconds로 변환한다. 파일을 String으로 바꾸지 않고 읽을 때 사용한다.
+	 * @param text 날짜/시각이 들어 있는 바이트 배열. (ASCII)
+	 * @param offset 날짜/시각의 시작 위치.
+	 * @param length 날짜/시각 필드의 길이. 14 이상이어야 하며, 14자 이후는 무시한다.
+	 * @return epoch milliseconds
+	 * @throws ParseException 14자보다 짧거나, 숫자가 아닌 문자가 있는 경우.
+	 * @see #parseDateTime(CharSequence)
+	 */
+	public static long parseDateTime(byte[] text, int offset, int length) throws ParseException {
+		if(length < 14) throw new ParseException("Unparseable date: \"" + new String(text, offset, Math.max(length, 0)) + "\"", 0);
+		
+		int year   = digit(text, offset, length, 0) * 1000 + digit(text, offset, length, 1) * 100 + digit(text, offset, length, 2) * 10 + digit(text, offset, length, 3);
+		int month  = digit(text, offset, length, 4) * 10 + digit(text, offset, length, 5);
+		int day    = digit(text, offset, length, 6) * 10 + digit(text, offset, length, 7);
+		int hour   = digit(text, offset, length, 8) * 10 + digit(text, offset, length, 9);
+		int minute = digit(text, offset, length, 10) * 10 + digit(text, offset, length, 11);
+		int second = digit(text, offset, length, 12) * 10 + digit(text, offset, length, 13);
+		
+		return toEpochMillis(year, month, day, hour, minute, second);
+	}
+	
+	private static int digit(byte[] text, int offset, int length, int index) throws ParseException {
+		byte c = text[offset + index];
+		if(c < '0' || c > '9') throw new ParseException("Unparseable date: \"" + new String(text, offset, length) + "\"", index);
+		return c - '0';
+	}
+	
+	private static long toEpochMillis(int year, int month, int day, int hour, int minute, int second) {
+		long localMillis = ((((daysFromCivil(year, month, 1) + day - 1) * 24 + hour) * 60 + minute) * 60 + second) * 1000L;
+		return localToEpochMillis(localMillis);
+	}
+	
+	/**
+	 * time zone의 현지 시각(UTC로 간주한 milliseconds)을 epoch milliseconds로 변환한다.
+	 * 하루 전후의 offset이 다르면(서머타임 등으로 offset이 바뀌는 날) GregorianCalendar와 같은 규칙을 따른다.
+	 * 현지 시각이 바뀐 offset 기준의 전환 시각 이후라면 바뀐 offset을, 그렇지 않으면 이전 offset을 사용한다.
+	 */
+	private static long localToEpochMillis(long localMillis) {
+		TimeZone zone = timeZone;
+		
+		long approx = localMillis - zone.getRawOffset();
+		int before  = zone.getOffset(approx - DAY1_IN_MILLISECONDS);
+		int after   = zone.getOffset(approx + DAY1_IN_MILLISECONDS);
+		if(before == after) return localMillis - before;
+		
+		if(zone.getOffset(localMillis - after) == after) return localMillis - after;
+		return localMillis - before;
+	}
+	
+	/**
+	 * epoch milliseconds를 yyyyMMddHHmmss 형태로 sb에 추가한다. parseDateTime()의 반대 작업.
+	 * @param epochMillis 출력할 시각.
+	 * @param sb 문자열을 추가할 StringBuilder.
+	 * @return sb
+	 */
+	public static StringBuilder formatDateTime(long epochMillis, StringBuilder sb) {
+		long localMillis = epochMillis + timeZone.getOffset(epochMillis);
+		long epochDay    = floorDiv(localMillis, DAY1_IN_MILLISECONDS);
+		int secondOfDay  = (int)(floorMod(localMillis, DAY1_IN_MILLISECONDS) / 1000);
+		
+		appendCivilDate(sb, epochDay, "");
+		appendDigits(sb, secondOfDay / 3600, 2);
+		appendDigits(sb, secondOfDay / 60 % 60, 2);
+		appendDigits(sb, secondOfDay % 60, 2);
+		
+		return sb;
+	}
+	
+	/**
+	 * epoch milliseconds를 getTimeZone() 시각 기준의 yyyy/MM/dd 형태로 sb에 추가한다. SimpleDateFormat을 만들지 않는다.
+	 * @param epochMillis 출력할 시각.
+	 * @param sb 문자열을 추가할 StringBuilder.
+	 * @return sb
+	 */
+	public static StringBuilder formatDate(long epochMillis, StringBuilder sb) {
+		appendCivilDate(sb, toEpochDay(epochMillis), "/");
+		return sb;
+	}
+	
+	/**
+	 * epoch day의 년, 월, 일을 separator로 구분해 추가한다.
+	 * civil from days. (http://howardhinnant.github.io/date_algorithms.html)
+	 */
+	private static void appendCivilDate(StringBuilder sb, long epochDay, String separator) {
+		long z     = epochDay + 719468;
+		long era   = floorDiv(z, 146097);
+		long doe   = z - era * 146097;
+		long yoe   = (doe - doe/1460 + doe/36524 - doe/146096) / 365;
+		long doy   = doe - (365*yoe + yoe/4 - yoe/100);
+		long mp    = (5*doy + 2) / 153;
+		int day    = (int)(doy - (153*mp + 2)/5 + 1);
+		int month  = (int)(mp < 10 ? mp + 3 : mp - 9);
+		long year  = yoe + era * 400 + (month <= 2 ? 1 : 0);
+		
+		appendDigits(sb, year, 4);
+		sb.append(separator);
+		appendDigits(sb, month, 2);
+		sb.append(separator);
+		appendDigits(sb, day, 2);
+	}
+	
+	/**
+	 * value를 width 자리가 되도록 앞에 0을 채워 추가한다.
+	 */
+	private static void appendDigits(StringBuilder sb, long value, int width) {
+		long limit = 1;
+		for(int i=1;i<width;i++) limit *= 10;
+		
+		for(; limit > 1 && value < limit; limit /= 10) sb.append('0');
+		sb.append(value);
+	}
+	
+	/**
+	 * 그레고리력 날짜의 epoch day (1970-01-01부터의 날짜 수)를 구한다. 13월 등 범위를 넘는 월은 다음 해로 넘긴다.
+	 * (http://howardhinnant.github.io/date_algorithms.html)
+	 */
+	public static long daysFromCivil(long year, int month, int day) {
+		year  += floorDiv(month - 1, 12);
+		month  = (int)floorMod(month - 1, 12) + 1;
+		
+		long y   = (month <= 2) ? year - 1 : year;
+		long era = floorDiv(y, 400);
+		long yoe = y - era * 400;
+		long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long doe = yoe * 365 + yoe/4 - yoe/100 + doy;
+		
+		return era * 146097 + doe - 719468;
+	}
+	
+	private static long floorDiv(long x, long y) {
+		long q = x / y;
+		if((x % y != 0) && ((x < 0) != (y < 0))) q--;
+		return q;
+	}
+	
+	private static long floorMod(long x, long y) {
+		return x - floorDiv(x, y) * y;
+	}
+	
+	/**
+	 * epoch milliseconds를 getTimeZone() 시각 기준의 날짜로 바꾼다. Calendar를 만들지 않는다.
+	 * @param epochMillis epoch milliseconds
+	 * @return 1970/01/01부터의 날짜 수 (epoch day)
+	 */
+	public static long toEpochDay(long epochMillis) {
+		return floorDiv(epochMillis + timeZone.getOffset(epochMillis), DAY1_IN_MILLISECONDS);
+	}
+	
 	/**
 	 * 두 날짜의 날짜 수를 계산한다. 예를 들어, 5월 19일 3시 ~ 5월 20일 10시의 경우는 1일이 된다.
 	 * @param beforeDate
@@ -233,27 +520,18 @@ public class EfUtility {
 	 * @return before와 after의 날짜 차이
 	 */
 	public static long calculateDiffDays(Date beforeDate, Date afterDate) {
-		Calendar before = Calendar.getInstance();
-		before.setTime(beforeDate);
-		before.set(Calendar.HOUR_OF_DAY, 0);
-		before.set(Calendar.MINUTE, 0);
-		before.set(Calendar.SECOND, 0);
-		before.set(Calendar.MILLISECOND, 0);
-
-		Calendar after = Calendar.getInstance();
-		after.setTime(afterDate);
-		after.set(Calendar.HOUR_OF_DAY, 0);
-		after.set(Calendar.MINUTE, 0);
-		after.set(Calendar.SECOND, 0);
-		after.set(Calendar.MILLISECOND, 0);
-
-		long diffDays = 0;
-		while(before.before(after)) {
-			before.add(Calendar.DAY_OF_MONTH, 1);
-			diffDays++;
-		}
-
-		return diffDays;
+		return calculateDiffDays(beforeDate.getTime(), afterDate.getTime());
+	}
+	
+	/**
+	 * 두 시각의 날짜 수를 계산한다. 시각을 getTimeZone() 기준의 날짜(epoch day)로 바꾼 후 빼므로, 기간과 관계없이 O(1)이다.
+	 * 시간 부분은 무시하므로 29일 13시 ~ 31일 10시는 2일이다. after가 before보다 이전 날짜라면 0이다.
+	 * @param beforeTime epoch milliseconds
+	 * @param afterTime epoch milliseconds
+	 * @return before와 after의 날짜 차이
+	 */
+	public static long calculateDiffDays(long beforeTime, long afterTime) {
+		return Math.max(toEpochDay(afterTime) - toEpochDay(beforeTime), 0L);
 	}
 	
 	/**
@@ -261,17 +539,17 @@ public class EfUtility {
 	 * @return 두 날짜의 년/월/일이 같으면 true, 그렇지 않으면 false.
 	 */
 	public static boolean isSameDay(Date date1, Date date2) {
-		Calendar day1 = Calendar.getInstance();
-		day1.setTime(date1);
-		
-		Calendar day2 = Calendar.getInstance();
-		day2.setTime(date2);
-		
-		return (
-				(day1.get(Calendar.YEAR)  == day2.get(Calendar.YEAR)) &&
-				(day1.get(Calendar.MONTH) == day2.get(Calendar.MONTH)) &&
-				(day1.get(Calendar.DAY_OF_MONTH) == day2.get(Calendar.DAY_OF_MONTH))
-		);
+		return isSameDay(date1.getTime(), date2.getTime());
+	}
+	
+	/**
+	 * 두 시각의 getTimeZone() 기준 년/월/일이 같은지 여부를 판단.
+	 * @param time1 epoch milliseconds
+	 * @param time2 epoch milliseconds
+	 * @return 두 시각의 년/월/일이 같으면 true, 그렇지 않으면 false.
+	 */
+	public static boolean isSameDay(long time1, long time2) {
+		return toEpochDay(time1) == toEpochDay(time2);
 	}
 	
 	/**
@@ -279,10 +557,9 @@ public class EfUtility {
 	 * @return 두 이미지의 시간차이의 초단위 절대값. 시간 차이를 구할 수 없다면 (이미지 중의 하나가 null이거나, 시간 정보가 없는 등) -1.
 	 */
 	public static long calculateTimeDiffInSec(ImageEntity p1, ImageEntity p2) {
-		if(p1 == null || p1.getDateTime() == null) return -1;
-		if(p2 == null || p2.getDateTime() == null) return -1;
+		if(p1 == null || p2 == null) return -1;
 
-		return calculateTimeDiffInSec(p1.getDateTime(), p2.getDateTime());
+		return Math.abs((p2.getTime() - p1.getTime())/1000L);
 	}
 	
 	/**
@@ -295,4 +572,14 @@ public class EfUtility {
 
 		return Math.abs((afterDate.getTime() - beforeDate.getTime())/1000L);
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * 시간 차이를 초(sec)로 계산하여 반환.
+	 * @param beforeTime epoch milliseconds
+	 * @param afterTime epoch milliseconds
+	 * @return 시간차이의 초단위 절대값.
+	 */
+	public static long calculateTimeDiffInSec(long beforeTime, long afterTime) {
+		return Math.abs((afterTime - beforeTime)/1000L);
+	}
+}
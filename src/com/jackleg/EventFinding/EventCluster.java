@@ -1,8 +1,9 @@
 package com.jackleg.EventFinding;
 
-import java.text.SimpleDateFormat;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map.Entry;
 
@@ -10,16 +11,81 @@ import java.util.Map.Entry;
  * 이벤트 발견을 위한 클러스터.
  */
 public class EventCluster extends Cluster {
+	// isEvent() 판단에 필요한 이미지 개수들. 이벤트 후보를 나눌 때 이미지를 추가하면서 함께 센다.
+	private int abroadCount;
+	private int outOfHometownCityCount;
+	private boolean countersValid; // 해외 여부를 모르는 채로 추가된 이미지가 있으면 false. isEvent()에서 다시 센다.
+	private Boolean eventCache;    // isEvent()의 결과. 이미지가 추가되면 null로 지운다.
+	
 	/**
 	 * constructor
 	 */
 	public EventCluster(int id, Author author) {
 		super(id, author);
+		this.abroadCount            = 0;
+		this.outOfHometownCityCount = 0;
+		this.countersValid          = true;
+		this.eventCache             = null;
 	}
 	
 	public EventCluster(int id, Author author, ArrayList<ImageEntity> images) {
 		super(id, author);
 		this.images = images;
+		this.countersValid = false;
+		this.eventCache    = null;
+		recalculateAggregates();
+	}
+	
+	/**
+	 * 이미지를 클러스터에 추가. 해외, hometown city 외부 여부는 isEvent()를 처음 호출할 때 author로 판단한다.
+	 * @param image 추가될 이미지
+	 */
+	@Override
+	public void addImage(ImageEntity image) {
+		super.addImage(image);
+		countersValid = false;
+		eventCache    = null;
+	}
+	
+	/**
+	 * 이미지를 클러스터의 시간순 위치에 추가. 해외, hometown city 외부 여부는 isEvent()를 처음 호출할 때 author로 판단한다.
+	 * @param image 추가될 이미지
+	 */
+	@Override
+	public void insertImage(ImageEntity image) {
+		super.insertImage(image);
+		countersValid = false;
+		eventCache    = null;
+	}
+
+	/**
+	 * 해외, hometown city 외부 여부를 이미 알고 있는 이미지를 클러스터에 추가.
+	 * author.isAbroad(), author.isOutOfHometownCity()를 다시 호출하지 않고 개수만 센다.
+	 * @param image 추가될 이미지
+	 * @param abroad 이미지가 해외에 있는지 여부. author.isAbroad(image)와 같아야 한다.
+	 * @param outOfHometownCity 이미지가 hometown city 외부에 있는지 여부. author.isOutOfHometownCity(image)와 같아야 한다.
+	 */
+	public void addImage(ImageEntity image, boolean abroad, boolean outOfHometownCity) {
+		super.addImage(image);
+		if(abroad)            abroadCount++;
+		if(outOfHometownCity) outOfHometownCityCount++;
+		eventCache = null;
+	}
+	
+	/**
+	 * author로 이미지마다 해외, hometown city 외부 여부를 판단해 개수를 다시 센다.
+	 */
+	private void recountImages() {
+		abroadCount            = 0;
+		outOfHometownCityCount = 0;
+		
+		if(images != null) {
+			for (ImageEntity image : images) {
+				if(author.isOutOfHometownCity(image)) outOfHometownCityCount++;
+				if(author.isAbroad(image))            abroadCount++;
+			}
+		}
+		countersValid = true;
 	}
 	
 	/**
@@ -28,18 +94,20 @@ public class EventCluster extends Cluster {
 	 * 사진이 3장 이하면 무조건 이벤트 탈락
 	 * 홈타운의 도시레벨(서울특별시, 경기도 등)을 벗어난 곳일 경우 7장 이상이면 이벤트
 	 * 그 외의 경우 모두 이벤트 탈락
+	 * 이미지를 추가할 때 센 개수로 판단하며, 결과는 이미지가 추가될 때까지 저장해 두고 다시 사용한다.
 	 * @return 주어진 event 후보가 이벤트라면 true, 그렇지 않으면 false.
 	 */
 	public boolean isEvent() {
-		int abroadCount            = 0;
-		int outOfHometownCityCount = 0;
-		int totalCount             = getImagesCount();
-		
-		for (ImageEntity image : images) {
-			if(author.isOutOfHometownCity(image)) outOfHometownCityCount++;
-			if(author.isAbroad(image))            abroadCount++;
+		if(eventCache == null) {
+			if(countersValid == false) recountImages();
+			eventCache = classify();
 		}
-		long durationInSec = EfUtility.calculateTimeDiffInSec(getFirstTime(), getLastTime());
+		return eventCache;
+	}
+	
+	private boolean classify() {
+		int totalCount     = getImagesCount();
+		long durationInSec = EfUtility.calculateTimeDiffInSec(getFirstTimeInMillis(), getLastTimeInMillis());
 
 		if(abroadCount >= 1) return true;
 		if(totalCount > 10 && durationInSec > 10 * 60) return true;
@@ -51,21 +119,45 @@ public class EventCluster extends Cluster {
 	/**
 	 * 이 클러스터를 sub 클러스터로 나누어 리스트에 담아 반환한다.
 	 * 현재는 1시간을 기준으로 sub 클러스터를 나눈다.
-	 * @return 서브 클러스터의 리스트. 이미지가 없거나, split되지 않았다면 null.
+	 * 나눌 때는 구간의 경계만 구하며, 각 sub 클러스터는 리스트에서 처음 꺼낼 때 만들어진다. 이 클러스터에 이미지가 추가된 후에는 사용하면 안 된다.
+	 * @return 서브 클러스터의 리스트.
+	 */
+	public List<EventCluster> splitEventCluster() {
+		return new SubClusterList(splitEventRanges());
+	}
+	
+	/**
+	 * splitEventCluster()와 같은 기준으로 나누지만, sub 클러스터를 만들지 않고 시간순으로 정렬된 images의 index 구간으로 반환한다.
+	 * 구간별 내용은 getImage(), getRange(from, to), getRepLocation(from, to)로 얻는다.
+	 * @return 구간들의 경계. i번째 구간은 [bounds[i], bounds[i+1]) 이다. (Cluster#splitRangesByInterval 참고)
 	 */
-	public ArrayList<EventCluster> splitEventCluster() {
-		ArrayList<ArrayList<ImageEntity>> splittedImages = splitByInterval(EfUtility.HOUR1_IN_SECONDS);
-		if(splittedImages == null) return null;
+	public int[] splitEventRanges() {
+		return splitRangesByInterval(EfUtility.HOUR1_IN_SECONDS);
+	}
+	
+	/**
+	 * splitEventCluster()의 결과. 시간순으로 정렬된 images의 index 구간들로 sub 클러스터를 표현하고, get()을 호출할 때 EventCluster를 만든다.
+	 */
+	private class SubClusterList extends AbstractList<EventCluster> {
+		private int[] bounds;
+		private EventCluster[] subClusters; // 이미 만든 sub 클러스터
 		
-		ArrayList<EventCluster> subClusters = new ArrayList<EventCluster>();
-
-		int cid = 0;
-		for(ArrayList<ImageEntity> subimages : splittedImages) {
-			EventCluster subCluster = new EventCluster(cid, author, subimages);
-			subClusters.add(subCluster);
+		private SubClusterList(int[] bounds) {
+			this.bounds      = bounds;
+			this.subClusters = new EventCluster[bounds.length - 1];
+		}
+		
+		@Override
+		public EventCluster get(int index) {
+			if(subClusters[index] == null) {
+				ArrayList<ImageEntity> subimages = new ArrayList<ImageEntity>(images.subList(bounds[index], bounds[index+1]));
+				subClusters[index] = new EventCluster(0, author, subimages);
+			}
+			return subClusters[index];
 		}
 		
-		return subClusters;
+		@Override
+		public int size() { return subClusters.length; }
 	}
 	
 	/**
@@ -73,22 +165,46 @@ public class EventCluster extends Cluster {
 	 * 이 클러스터에 속한 사진이 hometown에 있다면 address componet의 1, 2번째 값을, 그렇지 않으면 나라 값의 count를 구해, 가장 많은 값을 사용한다.
 	 */
 	public String getRepLocation() {
-		HashMap<String, Integer> labelMap = new HashMap<String, Integer>();
+		return getRepLocation(0, getImagesCount());
+	}
+	
+	/**
+	 * images의 [from, to) 구간의 대표 지명 이름을 반환한다. 기준은 getRepLocation()과 같다.
+	 */
+	public String getRepLocation(int from, int to) {
+		// 이미지마다 label 문자열을 만들지 않도록 나라, address component의 code로 먼저 센 후, 종류별로 한 번만 label을 만든다.
+		// 개수가 같은 label들의 순서가 바뀌지 않도록, label은 이미지에 처음 나온 순서대로 labelMap에 넣는다.
+		LinkedHashMap<Long, Integer> codeCountMap = new LinkedHashMap<Long, Integer>();
 		
-		for(ImageEntity image : images) {
-			String label = null;
+		for(int i=from;i<to;i++) {
+			ImageEntity image = images.get(i);
+			Long key = null;
 			if(author.isAbroad(image)) {
-				label = image.getCountry();
+				key = (long)image.getCountryCode(); // 0 이상
 			}
 			else {
-				String[] acArray = image.getAddressComponents();
-				if(acArray == null) continue;
+				if(image.hasAddressComponents() == false) continue;
 				
-				label = acArray[0] + " " + acArray[1]; 
+				// 음수가 되도록 최상위 bit를 켜서 나라 code와 구분한다. code는 NONE(-1)일 수 있으므로 1을 더해 저장한다.
+				key = Long.MIN_VALUE | ((long)(image.getAddressComponentCode(0) + 1) << 31) | (image.getAddressComponentCode(1) + 1);
 			}
 			
-			if(labelMap.containsKey(label)) labelMap.put(label, labelMap.get(label) + 1);
-			else                            labelMap.put(label, 1);
+			Integer count = codeCountMap.get(key);
+			codeCountMap.put(key, (count == null) ? 1 : count + 1);
+		}
+		
+		StringDictionary dictionary = StringDictionary.getGlobal();
+		HashMap<String, Integer> labelMap = new HashMap<String, Integer>();
+		for(Entry<Long, Integer> entry : codeCountMap.entrySet()) {
+			long key = entry.getKey();
+			
+			String label = null;
+			if(key >= 0) label = dictionary.decode((int)key);
+			else         label = dictionary.decode((int)((key >>> 31) & 0xFFFFFFFFL) - 1) + " " + dictionary.decode((int)(key & 0x7FFFFFFFL) - 1);
+			
+			// 나라 이름과 주소 label이 같은 문자열일 수 있으므로 더한다.
+			if(labelMap.containsKey(label)) labelMap.put(label, labelMap.get(label) + entry.getValue());
+			else                            labelMap.put(label, entry.getValue());
 		}
 		
 		List<Entry<String, Integer>> sortedList = EfUtility.sortMapByValue(labelMap, true);
@@ -99,15 +215,24 @@ public class EventCluster extends Cluster {
 	}
 	
 	/**
-	 * event의 기간을 string으로 표시.
+	 * event의 기간을 string으로 표시. 날짜는 이벤트를 나눌 때와 같은 EfUtility.getTimeZone() 기준이다.
 	 */
 	public String getRange() {
-		SimpleDateFormat dateSdf = new SimpleDateFormat("yyyy/MM/dd");
-		
-		String from = dateSdf.format(getFirstTime());
-		String to   = dateSdf.format(getLastTime());
+		return formatRange(getFirstTimeInMillis(), getLastTimeInMillis());
+	}
+	
+	/**
+	 * 시간순으로 정렬된 images의 [from, to) 구간의 기간을 string으로 표시.
+	 */
+	public String getRange(int from, int to) {
+		return formatRange(images.get(from).getTime(), images.get(to-1).getTime());
+	}
+	
+	private static String formatRange(long firstTime, long lastTime) {
+		StringBuilder sb = EfUtility.formatDate(firstTime, new StringBuilder());
+		if(EfUtility.isSameDay(firstTime, lastTime)) return sb.append("에").toString();
 		
-		if(from.equals(to)) return from + "에";
-		else                return from + "에서 " + to +"까지";
+		sb.append("에서 ");
+		return EfUtility.formatDate(lastTime, sb).append("까지").toString();
 	}
 }
@@ -0,0 +1,61 @@
+package com.jackleg.EventFinding;
+
+/**
+ * 좌표를 cellSize 크기의 격자로 양자화한 격자 칸. reverse-geocoding 결과를 cache할 때 key로 사용한다.
+ * cellSize가 0이면 좌표 자체(double의 bit)를 그대로 사용하므로, 좌표가 bit 단위로 같을 때만 같은 칸이다.
+ */
+public class GeoCellKey {
+	private long x;
+	private long y;
+
+	/**
+	 * constructor.
+	 * @param x 격자 칸의 x index. cellSize가 0이면 Double.doubleToLongBits(x).
+	 * @param y 격자 칸의 y index. cellSize가 0이면 Double.doubleToLongBits(y).
+	 */
+	public GeoCellKey(long x, long y) {
+		this.x = x;
+		this.y = y;
+	}
+
+	/**
+	 * 좌표가 속한 격자 칸을 구한다.
+	 * @param x 좌표의 x
+	 * @param y 좌표의 y
+	 * @param cellSize 격자 칸의 크기. 좌표와 같은 단위. 0이면 양자화하지 않는다.
+	 */
+	public static GeoCellKey of(double x, double y, double cellSize) {
+		if(cellSize <= 0.0) return new GeoCellKey(Double.doubleToLongBits(x), Double.doubleToLongBits(y));
+		return new GeoCellKey((long)Math.floor(x / cellSize), (long)Math.floor(y / cellSize));
+	}
+
+	public static GeoCellKey of(Point point, double cellSize) {
+		return of(point.getX(), point.getY(), cellSize);
+	}
+
+	/**
+	 * @param cellSize of()에서 사용한 격자 칸의 크기
+	 * @return 격자 칸의 중심 좌표. cellSize가 0이면 원래 좌표.
+	 */
+	public Point getCenter(double cellSize) {
+		if(cellSize <= 0.0) return new Point(Double.longBitsToDouble(x), Double.longBitsToDouble(y));
+		return new Point((x + 0.5) * cellSize, (y + 0.5) * cellSize);
+	}
+
+	public long getX() { return x; }
+	public long getY() { return y; }
+
+	@Override
+	public boolean equals(Object obj) {
+		if(obj instanceof GeoCellKey == false) return false;
+
+		GeoCellKey key = (GeoCellKey)obj;
+		return x == key.x && y == key.y;
+	}
+
+	@Override
+	public int hashCode() {
+		long bits = x * 31 + y;
+		return (int)(bits ^ (bits >>> 32));
+	}
+}
@@ -0,0 +1,164 @@
+package com.jackleg.EventFinding;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * reverse-geocoding API를 대신하는 로컬 HTTP 서버. (실험용)
+ * GeoTable(e.g. sample.geo.txt)을 HttpReverseGeocoder의 프로토콜로 제공하며, 요청마다 지연 시간을 주어 원격 API 호출을 흉내 낸다.
+ * 실제 API 없이 전체 파이프라인의 부하 테스트를 하기 위해 사용한다.
+ *
+ * 프로토콜: POST /reverse, body는 한 줄에 하나씩 "x\ty".
+ * 응답은 같은 순서로 한 줄에 하나씩 "acFirst\tacSecond\tcountry"이며, 찾을 수 없는 좌표는 빈 줄.
+ */
+public class GeoStandInServer {
+	public static final String PATH = "/reverse";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private GeoTable table;
+	private long latencyMillis;         // 요청마다 주는 지연 시간
+	private long latencyPerPointMillis; // 요청에 담긴 좌표마다 추가로 주는 지연 시간
+	private HttpServer server;
+	private ExecutorService executor;
+
+	private AtomicLong requestCount;
+	private AtomicLong pointCount;
+
+	/**
+	 * constructor. start()를 호출해야 요청을 받는다.
+	 * @param table 응답에 사용할 지명 테이블
+	 * @param port 서버 port. 0이면 사용 가능한 port를 할당받는다. (getPort() 참고)
+	 * @param threads 요청을 처리할 스레드 개수. 동시에 처리할 수 있는 요청 개수이기도 하다.
+	 * @param latencyMillis 요청마다 주는 지연 시간. (millisecond)
+	 * @param latencyPerPointMillis 요청에 담긴 좌표마다 추가로 주는 지연 시간. (millisecond)
+	 * @throws IOException
+	 */
+	public GeoStandInServer(GeoTable table, int port, int threads, long latencyMillis, long latencyPerPointMillis) throws IOException {
+		this.table                 = table;
+		this.latencyMillis         = latencyMillis;
+		this.latencyPerPointMillis = latencyPerPointMillis;
+		this.requestCount          = new AtomicLong(0);
+		this.pointCount            = new AtomicLong(0);
+
+		this.executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+		this.server   = HttpServer.create(new InetSocketAddress(port), 0);
+		this.server.setExecutor(executor);
+		this.server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleReverse(exchange);
+			}
+		});
+	}
+
+	public void start() { server.start(); }
+
+	/**
+	 * 서버를 멈춘다. 처리 중인 요청은 기다리지 않는다.
+	 */
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return 서버가 사용하는 port
+	 */
+	public int getPort() { return server.getAddress().getPort(); }
+
+	/**
+	 * @return 이 서버의 reverse-geocoding 주소 (e.g. http://localhost:8080/reverse)
+	 */
+	public String getUrl() { return "http://localhost:" + getPort() + PATH; }
+
+	public long getRequestCount() { return requestCount.get(); }
+	public long getPointCount() { return pointCount.get(); }
+
+	private void handleReverse(HttpExchange exchange) throws IOException {
+		try {
+			if("POST".equals(exchange.getRequestMethod()) == false) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+
+			StringBuilder response = new StringBuilder();
+			int points = 0;
+
+			BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), UTF8));
+			String line;
+			while((line=reader.readLine()) != null) {
+				if(line.isEmpty()) continue;
+
+				GeoTable.Place place = null;
+				String[] tokens = line.split("\t");
+				try {
+					place = table.lookup(Double.parseDouble(tokens[0]), Double.parseDouble(tokens[1]));
+				}
+				catch(RuntimeException e) { // 좌표 형식이 잘못된 경우는 찾을 수 없는 좌표로 응답한다.
+					place = null;
+				}
+
+				if(place != null) response.append(place.getAcFirst()).append('\t').append(place.getAcSecond()).append('\t').append(place.getCountry());
+				response.append('\n');
+				points++;
+			}
+
+			requestCount.incrementAndGet();
+			pointCount.addAndGet(points);
+
+			try {
+				Thread.sleep(latencyMillis + latencyPerPointMillis * points);
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			byte[] body = response.toString().getBytes(UTF8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.err.println("usage: java GeoStandInServer <geofile> <port> [latency] [latencyPerPoint] [threads]");
+			System.err.println("    geofile         : geo sample file. see. EfDriver#writeSampleGeoFile");
+			System.err.println("    port            : server port.");
+			System.err.println("    latency         : delay per request in milliseconds. default 50.");
+			System.err.println("    latencyPerPoint : additional delay per point in milliseconds. default 0.");
+			System.err.println("    threads         : number of requests served concurrently. default 8.");
+			System.err.println("");
+			System.exit(1);
+		}
+
+		GeoTable table       = GeoTable.load(args[0], GeoTable.DEFAULT_TOLERANCE);
+		int port             = Integer.parseInt(args[1]);
+		long latency         = (args.length >= 3) ? Long.parseLong(args[2]) : 50;
+		long latencyPerPoint = (args.length >= 4) ? Long.parseLong(args[3]) : 0;
+		int threads          = (args.length >= 5) ? Integer.parseInt(args[4]) : 8;
+
+		GeoStandInServer server = new GeoStandInServer(table, port, threads, latency, latencyPerPoint);
+		server.start();
+		System.err.println("geo stand-in server: " + server.getUrl() + " (" + table.size() + " places)");
+	}
+}
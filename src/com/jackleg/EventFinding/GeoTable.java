@@ -0,0 +1,172 @@
+package com.jackleg.EventFinding;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 좌표별 지명 정보(나라, 첫 번째/두 번째 address component)를 저장하고, 좌표로 가장 가까운 지명을 찾는 reverse-geocoding 테이블.
+ * 지명 하나는 Place 하나로 저장하며, 검색은 KdTree로 허용 거리(tolerance) 안에서 가장 가까운 Place를 찾는다.
+ * 좌표가 완전히 같은 Place를 다시 추가하면 나중에 추가한 값으로 바뀐다.
+ * 모든 Place를 추가한 후에는 여러 스레드에서 동시에 검색할 수 있다.
+ * 메모리 안의 테이블을 검색하는 ReverseGeocoder로도 사용할 수 있다.
+ */
+public class GeoTable implements ReverseGeocoder {
+	public static final double DEFAULT_TOLERANCE = 1e-6; // 좌표와 같은 단위(경위도). 약 0.1m.
+
+	/**
+	 * 좌표 하나의 지명 정보.
+	 */
+	public static class Place {
+		private double x;
+		private double y;
+		private String acFirst;
+		private String acSecond;
+		private String country;
+
+		public Place(double x, double y, String acFirst, String acSecond, String country) {
+			this.x        = x;
+			this.y        = y;
+			this.acFirst  = acFirst;
+			this.acSecond = acSecond;
+			this.country  = country;
+		}
+
+		public double getX() { return x; }
+		public double getY() { return y; }
+		public String getAcFirst() { return acFirst; }
+		public String getAcSecond() { return acSecond; }
+		public String getCountry() { return country; }
+	}
+
+	private double tolerance;
+	private ArrayList<Place> places;
+	private HashMap<GeoCellKey, Integer> indexByCoordinate; // 같은 좌표의 Place를 교체하기 위함.
+	private volatile KdTree index;                            // Place가 추가되면 null로 지우고, 다음 검색에서 다시 만든다.
+
+	/**
+	 * constructor. 허용 거리는 DEFAULT_TOLERANCE.
+	 */
+	public GeoTable() {
+		this(DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * constructor.
+	 * @param tolerance 검색할 때 허용하는 최대 거리. 좌표와 같은 단위.
+	 */
+	public GeoTable(double tolerance) {
+		this.tolerance         = tolerance;
+		this.places            = new ArrayList<Place>();
+		this.indexByCoordinate = new HashMap<GeoCellKey, Integer>();
+		this.index             = null;
+	}
+
+	/**
+	 * tab으로 구분된 x, y, acFirst, acSecond, country 형식의 파일(EfDriver#writeSampleGeoFile 참고)을 읽어 테이블을 만든다.
+	 * @param filename 읽을 파일 이름
+	 * @param tolerance 검색할 때 허용하는 최대 거리.
+	 * @return 파일의 지명 정보가 담긴 테이블
+	 * @throws IOException
+	 */
+	public static GeoTable load(String filename, double tolerance) throws IOException {
+		GeoTable table = new GeoTable(tolerance);
+
+		BufferedReader reader = new BufferedReader(new FileReader(filename));
+		try {
+			String line;
+			while((line=reader.readLine()) != null) {
+				String[] tokens = line.split("\t");
+
+				double x = Double.parseDouble(tokens[0]);
+				double y = Double.parseDouble(tokens[1]);
+				table.add(new Place(x, y, tokens[2], tokens[3], tokens[4]));
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		return table;
+	}
+
+	/**
+	 * @return 저장된 Place의 개수
+	 */
+	public synchronized int size() { return places.size(); }
+
+	public double getTolerance() { return tolerance; }
+
+	/**
+	 * Place를 추가한다. 좌표가 완전히 같은 Place가 이미 있다면 교체한다.
+	 * @param place 추가할 Place
+	 */
+	public synchronized void add(Place place) {
+		GeoCellKey key   = GeoCellKey.of(place.getX(), place.getY(), 0.0);
+		Integer existing = indexByCoordinate.get(key);
+
+		if(existing != null) {
+			places.set(existing, place);
+		}
+		else {
+			indexByCoordinate.put(key, places.size());
+			places.add(place);
+			index = null;
+		}
+	}
+
+	/**
+	 * 좌표에서 가장 가까운 Place를 찾는다.
+	 * @param point 찾을 좌표
+	 * @return 허용 거리 안에서 가장 가까운 Place. 없거나 point가 null이면 null.
+	 */
+	public Place lookup(Point point) {
+		if(point == null) return null;
+		return lookup(point.getX(), point.getY());
+	}
+
+	/**
+	 * 좌표 (x, y)에서 가장 가까운 Place를 찾는다. O(log n).
+	 * @return 허용 거리 안에서 가장 가까운 Place. 없다면 null.
+	 */
+	public Place lookup(double x, double y) {
+		KdTree tree = index;
+		if(tree == null) tree = buildIndex();
+
+		int nearest = tree.nearest(x, y, tolerance);
+		if(nearest < 0) return null;
+
+		synchronized(this) {
+			return places.get(nearest);
+		}
+	}
+
+	@Override
+	public Place reverseGeocode(Point point) {
+		return lookup(point);
+	}
+
+	@Override
+	public List<Place> reverseGeocode(List<Point> points) {
+		ArrayList<Place> result = new ArrayList<Place>(points.size());
+		for(Point point : points) result.add(lookup(point));
+		return result;
+	}
+
+	private synchronized KdTree buildIndex() {
+		if(index != null) return index;
+
+		double[] xs = new double[places.size()];
+		double[] ys = new double[places.size()];
+		for(int i=0;i<places.size();i++) {
+			xs[i] = places.get(i).getX();
+			ys[i] = places.get(i).getY();
+		}
+
+		index = new KdTree(xs, ys);
+		return index;
+	}
+}
@@ -0,0 +1,120 @@
+package com.jackleg.EventFinding;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * HTTP로 reverse-geocoding 서버에 요청하는 ReverseGeocoder.
+ * 요청은 POST body에 한 줄에 하나씩 "x\ty" 좌표를 담아 보내고, 응답은 같은 순서로 한 줄에 하나씩 "acFirst\tacSecond\tcountry"를 받는다.
+ * 찾을 수 없는 좌표는 빈 줄이다. 프로토콜은 GeoStandInServer 참고.
+ * 좌표가 많으면 maxBatchSize개씩 나누어 요청한다.
+ */
+public class HttpReverseGeocoder implements ReverseGeocoder {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private URL url;
+	private int maxBatchSize;
+	private int timeoutMillis;
+
+	/**
+	 * constructor.
+	 * @param url reverse-geocoding 서버의 주소. (e.g. http://localhost:8080/reverse)
+	 * @param maxBatchSize 한 번의 요청에 담을 최대 좌표 개수.
+	 * @param timeoutMillis 연결, 읽기 timeout. (millisecond)
+	 * @throws IOException url이 올바르지 않은 경우
+	 */
+	public HttpReverseGeocoder(String url, int maxBatchSize, int timeoutMillis) throws IOException {
+		this.url           = new URL(url);
+		this.maxBatchSize  = Math.max(maxBatchSize, 1);
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public GeoTable.Place reverseGeocode(Point point) throws IOException {
+		if(point == null) return null;
+		return reverseGeocode(Collections.singletonList(point)).get(0);
+	}
+
+	@Override
+	public List<GeoTable.Place> reverseGeocode(List<Point> points) throws IOException {
+		ArrayList<GeoTable.Place> result = new ArrayList<GeoTable.Place>(points.size());
+
+		// null 좌표는 요청하지 않는다.
+		ArrayList<Point> batch = new ArrayList<Point>();
+		for(Point point : points) {
+			if(point != null) batch.add(point);
+		}
+
+		ArrayList<GeoTable.Place> places = new ArrayList<GeoTable.Place>(batch.size());
+		for(int from=0;from<batch.size();from+=maxBatchSize) {
+			places.addAll(request(batch.subList(from, Math.min(from + maxBatchSize, batch.size()))));
+		}
+
+		int next = 0;
+		for(Point point : points) result.add((point == null) ? null : places.get(next++));
+
+		return result;
+	}
+
+	/**
+	 * 좌표들을 한 번의 요청으로 보내고 응답을 해석한다.
+	 */
+	private List<GeoTable.Place> request(List<Point> points) throws IOException {
+		StringBuilder body = new StringBuilder();
+		for(Point point : points) body.append(point.getX()).append('\t').append(point.getY()).append('\n');
+
+		HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+		try {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setConnectTimeout(timeoutMillis);
+			connection.setReadTimeout(timeoutMillis);
+			connection.setRequestProperty("Content-Type", "text/plain; charset=utf-8");
+
+			OutputStream out = connection.getOutputStream();
+			try {
+				out.write(body.toString().getBytes(UTF8));
+			}
+			finally {
+				out.close();
+			}
+
+			int status = connection.getResponseCode();
+			if(status != HttpURLConnection.HTTP_OK) throw new IOException("reverse-geocoding request failed: HTTP " + status);
+
+			ArrayList<GeoTable.Place> result = new ArrayList<GeoTable.Place>(points.size());
+			BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), UTF8));
+			try {
+				for(Point point : points) {
+					String line = reader.readLine();
+					if(line == null) throw new IOException("reverse-geocoding response is shorter than the request: " + result.size() + "/" + points.size());
+
+					if(line.isEmpty()) {
+						result.add(null);
+						continue;
+					}
+
+					String[] tokens = line.split("\t", -1);
+					if(tokens.length < 3) throw new IOException("malformed reverse-geocoding response: " + line);
+					result.add(new GeoTable.Place(point.getX(), point.getY(), tokens[0], tokens[1], tokens[2]));
+				}
+			}
+			finally {
+				reader.close();
+			}
+
+			return result;
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.jackleg.EventFinding;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 한 사용자의 이미지 정보를 속성별 primitive 배열로 저장하는 columnar store.
+ * i번째 원소는 Author의 시간순으로 정렬된 images에서 i번째 이미지의 값이다.
+ * 클러스터링, 위치 정보 전파, 이벤트 후보 분할처럼 이미지 전체를 순서대로 훑는 작업에서 ImageEntity 객체를 따라가지 않고 배열만 읽기 위해 사용한다.
+ * 나라, 주소 정보는 StringDictionary.getGlobal()의 code로 저장하며, 값이 없으면 StringDictionary.NONE이다.
+ */
+public class ImageColumns {
+	public static final int NO_CLUSTER = 0; // local cluster id는 1부터 시작한다.
+
+	private int size;
+	private int geoCount;
+
+	private long[] times;     // epoch milliseconds
+	private double[] xs;      // 위치 정보가 없으면 NaN
+	private double[] ys;      // 위치 정보가 없으면 NaN
+	private int[] clusterIds; // local cluster id. 속한 클러스터가 없으면 NO_CLUSTER.
+
+	private int[] countries;
+	private int[] addressComponents;        // 이미지당 3개의 code가 이어서 저장된다.
+	private boolean[] hasAddressComponents; // address components 배열 자체가 없는 경우와, 배열의 원소가 null인 경우를 구분하기 위함.
+
+	/**
+	 * constructor.
+	 * @param images 시간순으로 정렬된 이미지들.
+	 */
+	public ImageColumns(List<ImageEntity> images) {
+		this.size = images.size();
+
+		times      = new long[size];
+		xs         = new double[size];
+		ys         = new double[size];
+		clusterIds = new int[size];
+
+		geoCount = 0;
+		for(int i=0;i<size;i++) {
+			ImageEntity image = images.get(i);
+			times[i] = image.getTime();
+
+			Point point = image.getPoint();
+			if(point == null) {
+				xs[i] = Double.NaN;
+				ys[i] = Double.NaN;
+			}
+			else {
+				xs[i] = point.getX();
+				ys[i] = point.getY();
+				geoCount++;
+			}
+
+			clusterIds[i] = image.isInLocalCluster() ? image.getLocalCluster().getId() : NO_CLUSTER;
+		}
+
+		countries            = new int[size];
+		addressComponents    = new int[size * 3];
+		hasAddressComponents = new boolean[size];
+		loadLocalInfo(images);
+	}
+
+	/**
+	 * 이미지들의 나라, 주소 정보를 다시 읽는다. ImageEntity의 위치 정보를 직접 바꾼 후 호출한다.
+	 * @param images constructor에 전달한 것과 같은 순서의 이미지들.
+	 */
+	public void loadLocalInfo(List<ImageEntity> images) {
+		for(int i=0;i<size;i++) {
+			ImageEntity image = images.get(i);
+			countries[i]            = image.getCountryCode();
+			hasAddressComponents[i] = image.hasAddressComponents();
+			for(int k=0;k<3;k++) addressComponents[i*3 + k] = image.getAddressComponentCode(k);
+		}
+	}
+
+	public int size() { return size; }
+
+	/**
+	 * @return 위치 정보가 있는 이미지의 개수
+	 */
+	public int getGeoCount() { return geoCount; }
+
+	public long getTime(int i) { return times[i]; }
+	public boolean hasPoint(int i) { return Double.isNaN(xs[i]) == false; }
+
+	/**
+	 * @return 이미지들의 x 좌표 배열. 위치 정보가 없는 이미지는 NaN. 복사하지 않으므로 내용을 바꾸면 안 된다.
+	 */
+	public double[] getXs() { return xs; }
+
+	/**
+	 * @return 이미지들의 y 좌표 배열. 위치 정보가 없는 이미지는 NaN. 복사하지 않으므로 내용을 바꾸면 안 된다.
+	 */
+	public double[] getYs() { return ys; }
+
+	public int getClusterId(int i) { return clusterIds[i]; }
+	public void setClusterId(int i, int clusterId) { clusterIds[i] = clusterId; }
+
+	public int getCountry(int i) { return countries[i]; }
+	public void setCountry(int i, int country) { countries[i] = country; }
+
+	public boolean hasAddressComponents(int i) { return hasAddressComponents[i]; }
+	public int getAddressComponent(int i, int k) { return addressComponents[i*3 + k]; }
+
+	/**
+	 * from 이미지의 address components를 to 이미지로 복사한다.
+	 */
+	public void copyAddress(int from, int to) {
+		hasAddressComponents[to] = hasAddressComponents[from];
+		System.arraycopy(addressComponents, from*3, addressComponents, to*3, 3);
+	}
+
+	/**
+	 * 모든 이미지의 나라, 주소 정보를 지운다.
+	 */
+	public void clearLocalInfo() {
+		Arrays.fill(countries, StringDictionary.NONE);
+		Arrays.fill(addressComponents, StringDictionary.NONE);
+		Arrays.fill(hasAddressComponents, false);
+	}
+}
@@ -2,7 +2,6 @@ package com.jackleg.EventFinding;
 
 import java.util.Date;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -10,16 +9,14 @@ public class ImageEntity
 	implements Comparable<ImageEntity>
 {
 	private String url;
-	private Date dateTime;
+	private long dateTime; // epoch milliseconds
 	private Point point;
 	private String formattedAddress;
-	private String[] addressComponents;
-	private String country;
+	private int[] addressComponents; // StringDictionary.getGlobal()의 code. address components가 없다면 null.
+	private int country;             // StringDictionary.getGlobal()의 code. 나라 정보가 없다면 StringDictionary.NONE.
 	private Author author;
 	private LocalCluster localCluster;
 	
-	private static SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss");
-	
 	/**
 	 * Constructor.
 	 * @param url
@@ -34,15 +31,30 @@ public class ImageEntity
 	public ImageEntity(String url, String dateTimeStr, Double longitude, Double latitude, String formattedAddress, String[] addressComponents, String country)
 		throws ParseException
 	{
+		this(url, EfUtility.parseDateTime(dateTimeStr), longitude, latitude, formattedAddress, addressComponents, country);
+	}
+	
+	/**
+	 * Constructor. 시각을 이미 epoch milliseconds로 변환한 경우.
+	 * @param url
+	 * @param dateTime epoch milliseconds.
+	 * @param longitude decimal format.
+	 * @param latitude decimal format.
+	 * @param formattedAddress
+	 * @param addressComponents
+	 * @param country
+	 */
+	public ImageEntity(String url, long dateTime, Double longitude, Double latitude, String formattedAddress, String[] addressComponents, String country) {
 		this.url      = url;
-		this.dateTime = sdf.parse(dateTimeStr);
+		this.dateTime = dateTime;
 		
 		if(longitude != null && latitude != null) this.point = new Point(longitude, latitude);
 		else                                      this.point = null;
 		
 		this.formattedAddress  = formattedAddress;
-		this.addressComponents = addressComponents;
-		this.country           = country;
+		this.addressComponents = null;
+		setAddressCompoments(addressComponents);
+		setCountry(country);
 		
 		this.author       = null;
 		this.localCluster = null;
@@ -60,26 +72,91 @@ public class ImageEntity
 		this(url, dateTimeStr, null, null, null, null, null);
 	}
 	
-	public Date getDateTime() { return this.dateTime; }
+	/**
+	 * @return 사진을 찍은 시각. 호출할 때마다 새 Date 객체를 만들므로, 시각 비교나 계산에는 getTime()을 사용한다.
+	 */
+	public Date getDateTime() { return new Date(this.dateTime); }
+	
+	/**
+	 * @return 사진을 찍은 시각. (epoch milliseconds)
+	 */
+	public long getTime() { return this.dateTime; }
+	
 	public Author getAuthor() { return this.author; }
 	public LocalCluster getLocalCluster() { return this.localCluster; }
 	public Point getPoint() { return this.point; }
 	public String getFormattedAddress() { return this.formattedAddress; }
-	public String[] getAddressComponents() { return this.addressComponents; }
-	public String getCountry() { return this.country; }
 	public String getUrl() { return this.url; }
 	
+	/**
+	 * @return address components. 호출할 때마다 dictionary에서 문자열을 찾아 새 배열을 만들므로, 비교에는 getAddressComponentCode()를 사용한다. 없다면 null.
+	 */
+	public String[] getAddressComponents() {
+		if(this.addressComponents == null) return null;
+		
+		StringDictionary dictionary = StringDictionary.getGlobal();
+		String[] result = new String[3];
+		for(int i=0;i<3;i++) result[i] = dictionary.decode(this.addressComponents[i]);
+		return result;
+	}
+	
+	/**
+	 * @return address components가 있는지 여부. 있더라도 원소는 null일 수 있다.
+	 */
+	public boolean hasAddressComponents() { return this.addressComponents != null; }
+	
+	/**
+	 * @param index 0~2
+	 * @return index번째 address component의 code. address components가 없거나 원소가 null이면 StringDictionary.NONE.
+	 */
+	public int getAddressComponentCode(int index) {
+		if(this.addressComponents == null) return StringDictionary.NONE;
+		return this.addressComponents[index];
+	}
+	
+	/**
+	 * @return 나라 정보. 없다면 null.
+	 */
+	public String getCountry() { return StringDictionary.getGlobal().decode(this.country); }
+	
+	/**
+	 * @return 나라 정보의 code. 없다면 StringDictionary.NONE.
+	 */
+	public int getCountryCode() { return this.country; }
+	
 	public void setAuthor(Author author) { this.author = author; }
 	public void setLocalCluster(LocalCluster cluster) { this.localCluster = cluster; }
 	public void setFormattedAddres(String formattedAddress) { this.formattedAddress = formattedAddress; }
 	public void setAddressCompoments(String[] addressComponents) {
 		if(addressComponents == null) this.addressComponents = null;
 		else {
-			if(this.addressComponents == null) this.addressComponents = new String[3];
-			System.arraycopy(addressComponents, 0, this.addressComponents, 0, 3);
+			if(this.addressComponents == null) this.addressComponents = new int[3];
+			for(int i=0;i<3;i++) this.addressComponents[i] = StringDictionary.getGlobal().encode(addressComponents[i]);
 		}
 	}
-	public void setCountry(String country) { this.country = country; }
+	public void setCountry(String country) { this.country = StringDictionary.getGlobal().encode(country); }
+	public void setCountryCode(int country) { this.country = country; }
+	
+	
+	/**
+	 * address components를 code로 지정한다. 배열은 복사해서 저장한다.
+	 * @param codes address components 3개의 code. null이면 address components를 지운다.
+	 */
+	public void setAddressComponentCodes(int[] codes) {
+		if(codes == null) this.addressComponents = null;
+		else {
+			if(this.addressComponents == null) this.addressComponents = new int[3];
+			System.arraycopy(codes, 0, this.addressComponents, 0, 3);
+		}
+	}
+	
+	/**
+	 * 다른 이미지의 address components를 복사한다. 문자열로 바꾸지 않고 code를 그대로 복사한다.
+	 * @param image address components를 복사할 이미지
+	 */
+	public void copyAddressComponents(ImageEntity image) {
+		setAddressComponentCodes(image.addressComponents);
+	}
 	
 	/**
 	 * 이 이미지가 Local Cluster에 포함되어 있는지 여부.
@@ -99,26 +176,26 @@ public class ImageEntity
 	}
 	
 	public String toString() {
-		StringBuffer sb = new StringBuffer();
+		StringBuilder sb = new StringBuilder();
 		
-		sb.append(this.url)
-			.append("\t").append(sdf.format(this.dateTime));
+		sb.append(this.url).append("\t");
+		EfUtility.formatDateTime(this.dateTime, sb);
 		
 		// 이후의 데이터는 있는지 여부를 판단하면서 null이면 공란으로 출력.
 		if(this.point == null) sb.append("\t\t");
 		else                   sb.append("\t").append(this.point.toString());
 
 		if(this.formattedAddress == null) sb.append("\t\t\t\t");
-		else                              sb.append("\t").append(this.formattedAddress).append("\t").append(StringUtils.join(this.addressComponents, "\t"));
+		else                              sb.append("\t").append(this.formattedAddress).append("\t").append(StringUtils.join(getAddressComponents(), "\t"));
 		
-		if(this.country == null) sb.append("\t");
-		else                     sb.append("\t").append(this.country);
+		if(this.country == StringDictionary.NONE) sb.append("\t");
+		else                                      sb.append("\t").append(getCountry());
 		
 		return sb.toString();
 	}
 
 	@Override
 	public int compareTo(ImageEntity o) {
-		return this.dateTime.compareTo(o.getDateTime());
+		return (this.dateTime < o.dateTime) ? -1 : ((this.dateTime == o.dateTime) ? 0 : 1);
 	}
 }
@@ -0,0 +1,48 @@
+package com.jackleg.EventFinding;
+
+import java.util.Arrays;
+
+/**
+ * int 값들을 boxing 없이 담기 위한 가변 길이 리스트.
+ * 이웃 검색 결과처럼 반복해서 채우고 비우는 버퍼로 사용하며, clear()는 내부 배열을 재사용한다.
+ */
+public class IntList {
+	private int[] data;
+	private int size;
+
+	/**
+	 * constructor.
+	 */
+	public IntList() {
+		this(16);
+	}
+
+	/**
+	 * constructor.
+	 * @param capacity 초기 용량.
+	 */
+	public IntList(int capacity) {
+		this.data = new int[Math.max(capacity, 1)];
+		this.size = 0;
+	}
+
+	public int size() { return size; }
+	public int get(int index) { return data[index]; }
+	public void clear() { size = 0; }
+
+	/**
+	 * 리스트의 끝에 값을 추가한다. 용량이 부족하면 두 배로 늘린다.
+	 * @param value 추가할 값
+	 */
+	public void add(int value) {
+		if(size == data.length) data = Arrays.copyOf(data, data.length * 2);
+		data[size++] = value;
+	}
+
+	/**
+	 * 리스트의 값들을 오름차순으로 정렬한다.
+	 */
+	public void sort() {
+		Arrays.sort(data, 0, size);
+	}
+}
@@ -0,0 +1,240 @@
+package com.jackleg.EventFinding;
+
+/**
+ * 2차원 포인트들의 이웃 검색을 위한 KD-tree.
+ * 포인트는 생성자에 전달된 좌표 배열의 index로 구분하며, 좌표가 NaN인 포인트(위치 정보가 없는 이미지)는 tree에 포함하지 않는다.
+ * 별도의 노드 객체 없이 index 배열 하나로 tree를 표현하므로, 메모리는 O(n)이다.
+ * [lo, hi) 구간의 가운데 원소가 노드이며, 왼쪽 구간은 split 좌표가 노드보다 작거나 같고, 오른쪽 구간은 크거나 같다.
+ */
+public class KdTree {
+	private double[] xs;
+	private double[] ys;
+	private int[] nodes;
+
+	/**
+	 * constructor.
+	 * @param xs 포인트들의 x 좌표. 위치 정보가 없다면 NaN.
+	 * @param ys 포인트들의 y 좌표. 위치 정보가 없다면 NaN.
+	 */
+	public KdTree(double[] xs, double[] ys) {
+		this.xs = xs;
+		this.ys = ys;
+
+		int count = 0;
+		for(int i=0;i<xs.length;i++) {
+			if(Double.isNaN(xs[i]) == false && Double.isNaN(ys[i]) == false) count++;
+		}
+
+		nodes = new int[count];
+		count = 0;
+		for(int i=0;i<xs.length;i++) {
+			if(Double.isNaN(xs[i]) == false && Double.isNaN(ys[i]) == false) nodes[count++] = i;
+		}
+
+		build(0, nodes.length, true);
+	}
+
+	/**
+	 * @return tree에 포함된 포인트의 개수
+	 */
+	public int size() { return nodes.length; }
+
+	/**
+	 * [lo, hi) 구간을 가운데 원소 기준으로 나누고, 양쪽 구간을 재귀적으로 구성한다.
+	 * @param splitX true이면 x 좌표로, false이면 y 좌표로 나눈다.
+	 */
+	private void build(int lo, int hi, boolean splitX) {
+		if(hi - lo <= 1) return;
+
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi - 1, mid, splitX ? xs : ys);
+
+		build(lo, mid, !splitX);
+		build(mid + 1, hi, !splitX);
+	}
+
+	/**
+	 * nodes[left..right] 구간에서 target 위치에 올 원소를 quickselect로 찾아 배치한다.
+	 * 수행 후 target 앞의 원소들은 target보다 작거나 같고, 뒤의 원소들은 크거나 같다.
+	 */
+	private void select(int left, int right, int target, double[] coords) {
+		while(left < right) {
+			double pivot = coords[nodes[(left + right) >>> 1]];
+			int i = left;
+			int j = right;
+
+			while(i <= j) {
+				while(coords[nodes[i]] < pivot) i++;
+				while(coords[nodes[j]] > pivot) j--;
+				if(i <= j) {
+					int temp = nodes[i];
+					nodes[i] = nodes[j];
+					nodes[j] = temp;
+					i++;
+					j--;
+				}
+			}
+
+			if(target <= j)      right = j;
+			else if(target >= i) left  = i;
+			else                 return;
+		}
+	}
+
+	/**
+	 * 주어진 포인트와의 거리가 threshold보다 작은 포인트들의 index를 result에 추가한다. 자기 자신은 제외한다.
+	 * 거리는 EfUtility.distance()와 같은 식으로 계산하므로, distance matrix를 이용한 결과와 동일하다.
+	 * @param pointIndex 이웃을 구할 포인트의 index.
+	 * @param threshold 거리 threshold.
+	 * @param result 이웃들의 index가 추가될 리스트. 순서는 정해져 있지 않다.
+	 */
+	public void searchRadius(int pointIndex, double threshold, IntList result) {
+		if(Double.isNaN(xs[pointIndex]) || Double.isNaN(ys[pointIndex])) return;
+		searchRadius(0, nodes.length, true, pointIndex, threshold, result);
+	}
+
+	private void searchRadius(int lo, int hi, boolean splitX, int pointIndex, double threshold, IntList result) {
+		if(lo >= hi) return;
+
+		int mid  = (lo + hi) >>> 1;
+		int node = nodes[mid];
+
+		if(node != pointIndex && EfUtility.distance(xs[pointIndex], ys[pointIndex], xs[node], ys[node]) < threshold) result.add(node);
+
+		double diff = splitX ? xs[pointIndex] - xs[node] : ys[pointIndex] - ys[node];
+		if(diff < 0) {
+			searchRadius(lo, mid, !splitX, pointIndex, threshold, result);
+			if(-diff <= threshold) searchRadius(mid + 1, hi, !splitX, pointIndex, threshold, result);
+		}
+		else {
+			searchRadius(mid + 1, hi, !splitX, pointIndex, threshold, result);
+			if(diff <= threshold) searchRadius(lo, mid, !splitX, pointIndex, threshold, result);
+		}
+	}
+
+	/**
+	 * 주어진 포인트에서 k번째로 가까운 포인트까지의 거리(K-distance)를 구한다. 자기 자신은 제외한다.
+	 * 크기 k의 max heap을 유지하면서 tree를 탐색하고, heap의 최대값보다 먼 서브트리는 건너뛴다.
+	 * @param pointIndex K-distance를 구할 포인트의 index.
+	 * @param k K-distance에서 구할 K값.
+	 * @return K-distance. 포인트에 위치 정보가 없거나, 자신을 제외한 포인트가 k개보다 적다면 NaN.
+	 */
+	public double kDistance(int pointIndex, int k) {
+		return kDistance(pointIndex, k, new double[Math.max(k, 0)]);
+	}
+
+	/**
+	 * 주어진 포인트의 K-distance를 구한다. 여러 포인트에 대해 반복해서 구할 때, heap 버퍼를 재사용하기 위해 사용한다.
+	 * @param pointIndex K-distance를 구할 포인트의 index.
+	 * @param k K-distance에서 구할 K값.
+	 * @param heap 길이가 k인 작업용 버퍼. 내용은 덮어쓴다.
+	 * @return K-distance. 포인트에 위치 정보가 없거나, 자신을 제외한 포인트가 k개보다 적다면 NaN.
+	 */
+	public double kDistance(int pointIndex, int k, double[] heap) {
+		if(Double.isNaN(xs[pointIndex]) || Double.isNaN(ys[pointIndex])) return Double.NaN;
+		if(k <= 0) return 0.0; // 0번째로 가까운 포인트는 자기 자신.
+
+		int size = searchNearest(0, nodes.length, true, pointIndex, heap, 0);
+
+		if(size < k) return Double.NaN;
+		return heap[0];
+	}
+
+	/**
+	 * @return 탐색 후 heap의 크기
+	 */
+	private int searchNearest(int lo, int hi, boolean splitX, int pointIndex, double[] heap, int size) {
+		if(lo >= hi) return size;
+
+		int mid  = (lo + hi) >>> 1;
+		int node = nodes[mid];
+
+		if(node != pointIndex) size = offer(heap, size, EfUtility.distance(xs[pointIndex], ys[pointIndex], xs[node], ys[node]));
+
+		double diff = splitX ? xs[pointIndex] - xs[node] : ys[pointIndex] - ys[node];
+		if(diff < 0) {
+			size = searchNearest(lo, mid, !splitX, pointIndex, heap, size);
+			if(size < heap.length || -diff <= heap[0]) size = searchNearest(mid + 1, hi, !splitX, pointIndex, heap, size);
+		}
+		else {
+			size = searchNearest(mid + 1, hi, !splitX, pointIndex, heap, size);
+			if(size < heap.length || diff <= heap[0]) size = searchNearest(lo, mid, !splitX, pointIndex, heap, size);
+		}
+
+		return size;
+	}
+
+	/**
+	 * 주어진 좌표에서 가장 가까운 포인트를 찾는다. tree에 포함된 포인트가 아닌 임의의 좌표로 검색할 때 사용한다.
+	 * @param x 검색할 x 좌표.
+	 * @param y 검색할 y 좌표.
+	 * @param maxDistance 허용하는 최대 거리. 이보다 먼 포인트는 찾지 않는다.
+	 * @return 가장 가까운 포인트의 index. 거리가 같다면 index가 작은 포인트. maxDistance 안에 포인트가 없거나 좌표가 NaN이면 -1.
+	 */
+	public int nearest(double x, double y, double maxDistance) {
+		if(Double.isNaN(x) || Double.isNaN(y)) return -1;
+
+		double[] best = {maxDistance};
+		return searchNearest(0, nodes.length, true, x, y, best, -1);
+	}
+
+	/**
+	 * @param best 지금까지 찾은 가장 가까운 거리. 더 가까운 포인트를 찾으면 갱신된다.
+	 * @return 지금까지 찾은 가장 가까운 포인트의 index
+	 */
+	private int searchNearest(int lo, int hi, boolean splitX, double x, double y, double[] best, int bestIndex) {
+		if(lo >= hi) return bestIndex;
+
+		int mid  = (lo + hi) >>> 1;
+		int node = nodes[mid];
+
+		double distance = EfUtility.distance(x, y, xs[node], ys[node]);
+		if(distance < best[0] || (distance == best[0] && (bestIndex < 0 || node < bestIndex))) {
+			best[0]   = distance;
+			bestIndex = node;
+		}
+
+		double diff = splitX ? x - xs[node] : y - ys[node];
+		if(diff < 0) {
+			bestIndex = searchNearest(lo, mid, !splitX, x, y, best, bestIndex);
+			if(-diff <= best[0]) bestIndex = searchNearest(mid + 1, hi, !splitX, x, y, best, bestIndex);
+		}
+		else {
+			bestIndex = searchNearest(mid + 1, hi, !splitX, x, y, best, bestIndex);
+			if(diff <= best[0]) bestIndex = searchNearest(lo, mid, !splitX, x, y, best, bestIndex);
+		}
+
+		return bestIndex;
+	}
+
+	/**
+	 * 크기가 제한된 max heap에 값을 추가한다. heap이 가득 차 있다면 최대값보다 작은 경우에만 교체한다.
+	 * @return 추가 후 heap의 크기
+	 */
+	private static int offer(double[] heap, int size, double value) {
+		if(size < heap.length) {
+			int i = size++;
+			while(i > 0) {
+				int parent = (i - 1) >>> 1;
+				if(heap[parent] >= value) break;
+				heap[i] = heap[parent];
+				i = parent;
+			}
+			heap[i] = value;
+		}
+		else if(value < heap[0]) {
+			int i = 0;
+			while(true) {
+				int child = 2 * i + 1;
+				if(child >= size) break;
+				if(child + 1 < size && heap[child + 1] > heap[child]) child++;
+				if(heap[child] <= value) break;
+				heap[i] = heap[child];
+				i = child;
+			}
+			heap[i] = value;
+		}
+
+		return size;
+	}
+}
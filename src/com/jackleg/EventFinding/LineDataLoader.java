@@ -0,0 +1,296 @@
+package com.jackleg.EventFinding;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * line 데이터 파일(EfUtility#loadLineData 참고)을 병렬로 읽는 loader.
+ * 파일을 줄 경계에서 chunk로 나누고, 각 chunk를 memory-map 해서 여러 스레드에서 동시에 해석한다.
+ * 줄을 String으로 만들어 split하지 않고 바이트 단위로 tab 위치를 찾아, 필요한 필드만 String으로 변환한다.
+ * 각 chunk에서 만든 사용자별 이미지들은 마지막에 파일 순서대로 병합한 후, 사용자별로 한 번만 시간순 정렬한다.
+ */
+public class LineDataLoader {
+	private static final long CHUNK_SIZE             = 64L * 1024 * 1024;
+	private static final long PROGRESS_INTERVAL_NANO = 10L * 1000 * 1000 * 1000;
+	private static final int FIELDS_COUNT            = 10; // 사용하는 필드 개수. 이후 필드는 사용하지 않는다.
+
+	private String filename;
+	private int threads;
+	private Charset charset;
+
+	private AtomicLong lineCount;
+	private AtomicLong lastReportTime;
+
+	/**
+	 * constructor.
+	 * @param filename 데이터 파일 이름
+	 * @param threads 파일을 해석할 스레드 개수
+	 */
+	public LineDataLoader(String filename, int threads) {
+		this.filename       = filename;
+		this.threads        = Math.max(threads, 1);
+		this.charset        = Charset.defaultCharset(); // FileReader와 같은 charset
+		this.lineCount      = new AtomicLong(0);
+		this.lastReportTime = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * 파일을 읽어 Author 리스트를 반환한다.
+	 * @return Author들의 리스트
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public ArrayList<Author> load() throws IOException, ParseException {
+		FileInputStream in = new FileInputStream(filename);
+		final FileChannel channel = in.getChannel();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		HashMap<String, Author> authorMap = new HashMap<String, Author>();
+		try {
+			long[] bounds = splitChunks(channel);
+
+			ArrayList<Future<Map<String, ArrayList<ImageEntity>>>> chunks = new ArrayList<Future<Map<String, ArrayList<ImageEntity>>>>();
+			for(int i=0;i<bounds.length-1;i++) {
+				final long start = bounds[i];
+				final long end   = bounds[i+1];
+				chunks.add(executor.submit(new Callable<Map<String, ArrayList<ImageEntity>>>() {
+					@Override
+					public Map<String, ArrayList<ImageEntity>> call() throws IOException, ParseException {
+						return parseChunk(channel, start, end);
+					}
+				}));
+			}
+
+			// chunk 순서대로 병합해야 사용자별 이미지의 추가 순서가 파일 순서와 같다.
+			for(int i=0;i<chunks.size();i++) {
+				for(Map.Entry<String, ArrayList<ImageEntity>> entry : chunks.get(i).get().entrySet()) {
+					Author author = authorMap.get(entry.getKey());
+					if(author == null) {
+						author = new Author(entry.getKey());
+						authorMap.put(entry.getKey(), author);
+					}
+
+					for(ImageEntity image : entry.getValue()) author.appendImage(image);
+				}
+				chunks.set(i, null); // 병합한 chunk는 바로 놓아 준다.
+			}
+			
+			// 이미지를 모두 추가한 후 사용자별로 한 번만 정렬한다. 정렬은 stable하므로 시각이 같은 이미지들은 파일 순서를 유지한다.
+			for(Author author : authorMap.values()) author.sortImages(false);
+		}
+		catch(InterruptedException e) {
+			throw new IOException(e);
+		}
+		catch(ExecutionException e) {
+			if(e.getCause() instanceof IOException)    throw (IOException)e.getCause();
+			if(e.getCause() instanceof ParseException) throw (ParseException)e.getCause();
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+			throw new IOException(e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+			in.close();
+		}
+
+		System.err.println("line loaded: " + lineCount.get());
+
+		ArrayList<Author> resultList = new ArrayList<Author>();
+		for(String key : authorMap.keySet()) { resultList.add(authorMap.get(key)); }
+
+		return resultList;
+	}
+
+	/**
+	 * 파일을 CHUNK_SIZE 정도의 크기로 나눈다. 각 경계는 줄의 시작 위치이다.
+	 * @return chunk 경계들. i번째 chunk는 [bounds[i], bounds[i+1]) 구간이다.
+	 */
+	private long[] splitChunks(FileChannel channel) throws IOException {
+		long size = channel.size();
+		ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+
+		ArrayList<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+
+		long position = 0;
+		while(size - position > CHUNK_SIZE) {
+			position = findLineStart(channel, position + CHUNK_SIZE, probe);
+			if(position >= size) break;
+			bounds.add(position);
+		}
+		bounds.add(size);
+
+		long[] result = new long[bounds.size()];
+		for(int i=0;i<result.length;i++) result[i] = bounds.get(i);
+		return result;
+	}
+
+	/**
+	 * position 이후의 첫 번째 줄 시작 위치('\n' 다음 위치)를 찾는다.
+	 * @return 줄의 시작 위치. 없다면 파일 크기.
+	 */
+	private long findLineStart(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+		while(true) {
+			probe.clear();
+			int read = channel.read(probe, position);
+			if(read <= 0) return channel.size();
+
+			for(int i=0;i<read;i++) {
+				if(probe.get(i) == '\n') return position + i + 1;
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * [start, end) 구간의 줄들을 해석해, 사용자 이름별 이미지 리스트를 만든다.
+	 * @return 사용자 이름 -> 이미지 리스트. 사용자와 이미지 모두 chunk에 나온 순서대로 들어 있다.
+	 */
+	private Map<String, ArrayList<ImageEntity>> parseChunk(FileChannel channel, long start, long end) throws IOException, ParseException {
+		LinkedHashMap<String, ArrayList<ImageEntity>> result = new LinkedHashMap<String, ArrayList<ImageEntity>>();
+		if(start >= end) return result;
+
+		MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+
+		LineParser parser = new LineParser(charset);
+		byte[] line       = new byte[1024];
+		int lines         = 0;
+
+		while(buffer.hasRemaining()) {
+			int length = 0;
+			while(buffer.hasRemaining()) {
+				byte b = buffer.get();
+				if(b == '\n') break;
+				if(length == line.length) line = Arrays.copyOf(line, length * 2);
+				line[length++] = b;
+			}
+
+			ImageEntity image = parser.parse(line, length);
+			if(image == null) continue;
+			String authorName = parser.getAuthorName();
+
+			ArrayList<ImageEntity> images = result.get(authorName);
+			if(images == null) {
+				images = new ArrayList<ImageEntity>();
+				result.put(authorName, images);
+			}
+			images.add(image);
+
+			if(++lines == 4096) {
+				reportProgress(lines);
+				lines = 0;
+			}
+		}
+		reportProgress(lines);
+
+		return result;
+	}
+
+	/**
+	 * 읽은 줄 수를 더하고, 마지막 출력 후 PROGRESS_INTERVAL_NANO 이상 지났다면 진행 상황을 출력한다.
+	 */
+	private void reportProgress(int lines) {
+		long count = lineCount.addAndGet(lines);
+		long now   = System.nanoTime();
+		long last  = lastReportTime.get();
+
+		if(now - last >= PROGRESS_INTERVAL_NANO && lastReportTime.compareAndSet(last, now)) {
+			System.err.println("line loaded: " + count);
+		}
+	}
+
+	/**
+	 * line 데이터 파일의 한 줄을 ImageEntity로 해석한다. LineDataLoader와 AuthorReader가 함께 사용한다.
+	 * 필드 위치를 저장하는 배열을 재사용하므로, 스레드마다 따로 만들어 사용해야 한다.
+	 */
+	static class LineParser {
+		private Charset charset;
+		private int[] fieldStart;
+		private int[] fieldEnd;
+		private String authorName;
+
+		LineParser(Charset charset) {
+			this.charset    = charset;
+			this.fieldStart = new int[FIELDS_COUNT];
+			this.fieldEnd   = new int[FIELDS_COUNT];
+		}
+
+		/**
+		 * 한 줄을 해석한다. 사용자 이름은 getAuthorName()으로 얻는다.
+		 * @param line 줄의 바이트. '\n'은 포함하지 않는다.
+		 * @param length 줄의 길이. 끝의 '\r'은 무시한다.
+		 * @return 해석한 이미지. 빈 줄이면 null.
+		 * @throws ParseException 날짜/시각 필드를 해석할 수 없는 경우
+		 */
+		ImageEntity parse(byte[] line, int length) throws ParseException {
+			if(length > 0 && line[length-1] == '\r') length--;
+			if(length == 0) return null;
+
+			// tab 위치로 필드를 나눈다. 빈 필드가 있을 수 있으며, 없는 필드는 빈 필드로 간주한다.
+			int fields = 0;
+			fieldStart[0] = 0;
+			for(int i=0;i<length && fields<FIELDS_COUNT;i++) {
+				if(line[i] == '\t') {
+					fieldEnd[fields++] = i;
+					if(fields < FIELDS_COUNT) fieldStart[fields] = i + 1;
+				}
+			}
+			if(fields < FIELDS_COUNT) fieldEnd[fields++] = length;
+			for(int f=fields;f<FIELDS_COUNT;f++) fieldStart[f] = fieldEnd[f] = length;
+
+			authorName      = field(line, 0);
+			String imageUrl = field(line, 1);
+			long dateTime   = EfUtility.parseDateTime(line, fieldStart[2], fieldEnd[2] - fieldStart[2]);
+
+			Double longitude = null;
+			Double latitude  = null;
+			String formattedAddress    = null;
+			String[] addressComponents = null;
+			String country             = null;
+			try{
+				longitude = Double.valueOf(field(line, 3));
+				latitude  = Double.valueOf(field(line, 4));
+			}
+			catch(NumberFormatException e) { // 위치 정보가 없어 lng/lat 변경시 exception이 발생하는 경우. formattedAddress ~ country는 그대로 null로 남겨둔다.
+				longitude = null;
+				latitude  = null;
+			}
+
+			if(fieldEnd[5] > fieldStart[5]) {
+				formattedAddress  = field(line, 5);
+				addressComponents = new String[3];
+				addressComponents[0] = field(line, 6);
+				addressComponents[1] = field(line, 7);
+				addressComponents[2] = field(line, 8);
+			}
+			if(fieldEnd[9] > fieldStart[9]) country = field(line, 9);
+
+			return new ImageEntity(imageUrl, dateTime, longitude, latitude, formattedAddress, addressComponents, country);
+		}
+
+		/**
+		 * @return 마지막으로 parse()한 줄의 사용자 이름
+		 */
+		String getAuthorName() { return authorName; }
+
+		private String field(byte[] line, int index) {
+			return new String(line, fieldStart[index], fieldEnd[index] - fieldStart[index], charset);
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package com.jackleg.EventFinding;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * line 데이터 파일을 사용자 이름 순으로 정렬해, 같은 사용자의 줄들이 모여 있는 파일을 만드는 external sort.
+ * 정해진 메모리(maxBufferBytes)만큼 줄을 읽어 정렬한 후 임시 파일(run)로 쓰고, run들을 병합해 결과 파일을 만든다.
+ * 정렬은 stable하므로 같은 사용자의 줄들은 원래 파일의 순서를 유지한다.
+ * 결과 파일은 AuthorReader로 한 사용자씩 읽을 수 있다.
+ */
+public class LineDataSorter {
+	private static final int MERGE_FAN_IN    = 64; // 한 번에 병합하는 최대 run 개수
+	private static final int LINE_OVERHEAD   = 64; // 줄 하나를 String으로 저장할 때의 대략적인 객체 크기
+	private static final int IO_BUFFER_SIZE  = 1024 * 1024;
+
+	private File tempDir;
+	private long maxBufferBytes;
+	private Charset charset;
+
+	private int runCount;
+	private long lineCount;
+
+	/**
+	 * 줄의 첫 번째 필드(사용자 이름)로 비교한다.
+	 */
+	private static final Comparator<String> AUTHOR_ORDER = new Comparator<String>() {
+		@Override
+		public int compare(String a, String b) {
+			return compareAuthor(a, b);
+		}
+	};
+
+	/**
+	 * constructor.
+	 * @param tempDir run 파일을 만들 디렉토리. null이면 시스템 임시 디렉토리.
+	 * @param maxBufferBytes 정렬을 위해 메모리에 담을 줄들의 최대 크기. (대략적인 byte)
+	 */
+	public LineDataSorter(File tempDir, long maxBufferBytes) {
+		this.tempDir        = tempDir;
+		this.maxBufferBytes = Math.max(maxBufferBytes, 1);
+		this.charset        = Charset.defaultCharset(); // LineDataLoader와 같은 charset
+		this.runCount       = 0;
+		this.lineCount      = 0;
+	}
+
+	/**
+	 * input 파일을 사용자 이름 순으로 정렬해 output 파일로 쓴다. 빈 줄은 버린다.
+	 * @param input 입력 파일 이름
+	 * @param output 결과 파일 이름
+	 * @throws IOException
+	 */
+	public void sort(String input, String output) throws IOException {
+		ArrayList<File> runs = new ArrayList<File>();
+		try {
+			ArrayList<String> buffer = new ArrayList<String>();
+			long bufferBytes = 0;
+
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(input), charset), IO_BUFFER_SIZE);
+			try {
+				String line;
+				while((line=reader.readLine()) != null) {
+					if(line.isEmpty()) continue;
+
+					buffer.add(line);
+					bufferBytes += 2L * line.length() + LINE_OVERHEAD;
+					lineCount++;
+
+					if(bufferBytes >= maxBufferBytes) {
+						runs.add(writeRun(buffer));
+						buffer.clear();
+						bufferBytes = 0;
+					}
+				}
+			}
+			finally {
+				reader.close();
+			}
+
+			// 모든 줄이 메모리에 들어갔다면 run 파일 없이 바로 쓴다.
+			if(runs.isEmpty()) {
+				Collections.sort(buffer, AUTHOR_ORDER);
+				writeLines(buffer, new File(output));
+				runCount = 1;
+				return;
+			}
+			if(buffer.isEmpty() == false) runs.add(writeRun(buffer));
+			buffer = null;
+			runCount = runs.size();
+
+			// run이 많으면 MERGE_FAN_IN개씩 여러 단계로 병합한다. 앞쪽 run들부터 순서대로 병합하므로 stable하다.
+			while(runs.size() > MERGE_FAN_IN) {
+				ArrayList<File> merged = new ArrayList<File>();
+				for(int from=0;from<runs.size();from+=MERGE_FAN_IN) {
+					List<File> group = runs.subList(from, Math.min(from + MERGE_FAN_IN, runs.size()));
+					File run = createTempFile();
+					merge(group, run);
+					for(File file : group) file.delete();
+					merged.add(run);
+				}
+				runs = merged;
+			}
+			merge(runs, new File(output));
+		}
+		finally {
+			for(File run : runs) run.delete();
+		}
+	}
+
+	/**
+	 * @return 마지막 sort()에서 만든 run 개수. 1이면 임시 파일 없이 메모리에서 정렬했다.
+	 */
+	public int getRunCount() { return runCount; }
+
+	/**
+	 * @return 지금까지 읽은 줄 수. (빈 줄 제외)
+	 */
+	public long getLineCount() { return lineCount; }
+
+	private File writeRun(ArrayList<String> lines) throws IOException {
+		Collections.sort(lines, AUTHOR_ORDER);
+
+		File run = createTempFile();
+		writeLines(lines, run);
+		return run;
+	}
+
+	private File createTempFile() throws IOException {
+		File run = File.createTempFile("ef-sort-", ".run", tempDir);
+		run.deleteOnExit();
+		return run;
+	}
+
+	private void writeLines(List<String> lines, File file) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), charset), IO_BUFFER_SIZE);
+		try {
+			for(String line : lines) {
+				writer.write(line);
+				writer.write('\n');
+			}
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * 정렬된 run 파일들을 병합해 output에 쓴다. 사용자 이름이 같으면 앞쪽 run의 줄이 먼저 나온다.
+	 */
+	private void merge(List<File> runs, File output) throws IOException {
+		PriorityQueue<RunCursor> queue = new PriorityQueue<RunCursor>(Math.max(runs.size(), 1), new Comparator<RunCursor>() {
+			@Override
+			public int compare(RunCursor a, RunCursor b) {
+				int result = compareAuthor(a.line, b.line);
+				if(result != 0) return result;
+				return (a.index < b.index) ? -1 : ((a.index == b.index) ? 0 : 1);
+			}
+		});
+
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), charset), IO_BUFFER_SIZE);
+		try {
+			for(int i=0;i<runs.size();i++) {
+				RunCursor cursor = new RunCursor(runs.get(i), i);
+				if(cursor.advance()) queue.add(cursor);
+				else                 cursor.close();
+			}
+
+			while(queue.isEmpty() == false) {
+				RunCursor cursor = queue.poll();
+				writer.write(cursor.line);
+				writer.write('\n');
+
+				if(cursor.advance()) queue.add(cursor);
+				else                 cursor.close();
+			}
+		}
+		finally {
+			for(RunCursor cursor : queue) cursor.close();
+			writer.close();
+		}
+	}
+
+	/**
+	 * 두 줄을 첫 번째 필드(사용자 이름)로 비교한다. tab이 없는 줄은 줄 전체를 사용자 이름으로 본다.
+	 */
+	private static int compareAuthor(String a, String b) {
+		int aEnd = a.indexOf('\t');
+		int bEnd = b.indexOf('\t');
+		if(aEnd < 0) aEnd = a.length();
+		if(bEnd < 0) bEnd = b.length();
+
+		int length = Math.min(aEnd, bEnd);
+		for(int i=0;i<length;i++) {
+			char ac = a.charAt(i);
+			char bc = b.charAt(i);
+			if(ac != bc) return ac - bc;
+		}
+		return aEnd - bEnd;
+	}
+
+	/**
+	 * 병합 중인 run 파일에서 다음에 쓸 줄.
+	 */
+	private class RunCursor {
+		private BufferedReader reader;
+		private int index; // run의 순서. 사용자 이름이 같은 줄들의 순서를 정한다.
+		private String line;
+
+		private RunCursor(File run, int index) throws IOException {
+			this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(run), charset), IO_BUFFER_SIZE / MERGE_FAN_IN);
+			this.index  = index;
+		}
+
+		private boolean advance() throws IOException {
+			line = reader.readLine();
+			return line != null;
+		}
+
+		private void close() throws IOException {
+			reader.close();
+		}
+	}
+}
@@ -38,6 +38,15 @@ public class LocalCluster extends Cluster {
 		image.setLocalCluster(this);
 	}
 	
+	@Override
+	/**
+	 * 이미지를 이 클러스터의 시간순 위치에 추가.
+	 */
+	public void insertImage(ImageEntity image) {
+		super.insertImage(image);
+		image.setLocalCluster(this);
+	}
+	
 	/**
 	 * 역지오코딩 API 호출을 위해 클러스터에서 가장 중심에 가까운 사진의 포인트를 반환.
 	 * 현재 이벤트 찾기 로직에서 이미지의 주소/나라 정보를 사용하고 있기 때문에, 수치적인 중심점을 찾는 getCenterPoint()만을 사용할 수는 없고,
@@ -69,11 +78,15 @@ public class LocalCluster extends Cluster {
 	 * @param country 나라 정보
 	 */
 	public void setApproxLocalInfo(String acFirst, String acSecond, String country) {
-		String[] acs = {acFirst, acSecond, null};
+		StringDictionary dictionary = StringDictionary.getGlobal();
+		int[] acs       = {dictionary.encode(acFirst), dictionary.encode(acSecond), StringDictionary.NONE};
+		int countryCode = dictionary.encode(country);
 		
 		for(ImageEntity image : images) {
-			if(image.getCountry() == null) image.setCountry(country);
-			if(image.getAddressComponents() == null) image.setAddressCompoments(acs);
+			if(image.getCountryCode() == StringDictionary.NONE) image.setCountryCode(countryCode);
+			if(image.hasAddressComponents() == false) image.setAddressComponentCodes(acs);
 		}
+		
+		if(author != null) author.invalidateLocalInfo();
 	}	
 }
\ No newline at end of file
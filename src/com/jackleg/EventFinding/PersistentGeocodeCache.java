@@ -0,0 +1,451 @@
+package com.jackleg.EventFinding;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * reverse-geocoding 결과를 파일에 저장해 두고 실행이 바뀌어도 다시 사용하는 ReverseGeocoder decorator.
+ * 시작할 때 파일을 memory-map 해서 한 번에 읽고, 파일에 없는 좌표만 delegate에 요청한 후 결과를 파일 끝에 추가(append)한다.
+ * key는 GeoCellKey로 양자화한 좌표이며, 한 번의 실행 안에서는 모든 사용자가 같은 cache를 공유한다.
+ * cellSize가 0보다 크면 delegate에는 칸의 중심을 요청하므로, 저장되는 결과는 어느 좌표가 먼저 요청되었는지와 상관없다.
+ *
+ * 파일 형식 (big-endian):
+ * header: int MAGIC, int VERSION, double cellSize, int length, UTF-8 bytes source
+ *   source는 결과를 만든 geocoder를 나타내는 문자열이다. (e.g. 서버 주소, sample geo file의 경로와 수정 시각)
+ * record: byte type + 내용. type별 내용은 다음과 같다.
+ *   RECORD_STRING: int length, UTF-8 bytes. 파일 안에서 나온 순서대로 0부터 번호가 붙는다.
+ *   RECORD_PLACE : long kx, long ky, double x, double y, int acFirst, int acSecond, int country. 문자열은 RECORD_STRING의 번호이며 null이면 -1.
+ *   RECORD_MISS  : long kx, long ky, long time. 찾을 수 없었던 좌표. time(epoch milliseconds)으로부터 missTtlMillis가 지나면 다시 요청한다.
+ * cellSize나 source가 다른 파일은 다른 geocoder의 결과일 수 있으므로 버리고 새로 시작한다.
+ * 같은 key의 레코드가 여러 개면 마지막 레코드가 유효하다. 쓰는 도중 끊긴 마지막 레코드는 다음에 열 때 잘라낸다.
+ * 유효하지 않은 레코드가 유효한 레코드의 compactionRatio배를 넘으면 파일을 다시 써서(compaction) 정리한다.
+ * 파일에는 lock을 걸어 한 프로세스만 쓰며, lock을 얻지 못하면 읽기만 한다.
+ */
+public class PersistentGeocodeCache implements ReverseGeocoder {
+	private static final int MAGIC           = 0x45464743; // "EFGC"
+	private static final int VERSION         = 3; // 3: cellSize가 0보다 크면 칸의 중심으로 요청한 결과를 저장한다.
+	private static final int MIN_HEADER_SIZE = 4 + 4 + 8 + 4;
+
+	private static final byte RECORD_STRING = 1;
+	private static final byte RECORD_PLACE  = 2;
+	private static final byte RECORD_MISS   = 3;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// 찾을 수 없었던 좌표의 entries 값
+	private static final GeoTable.Place NOT_FOUND = new GeoTable.Place(Double.NaN, Double.NaN, null, null, null);
+
+	private Path path;
+	private ReverseGeocoder delegate;
+	private String source;
+	private double cellSize;
+	private long missTtlMillis;
+	private double compactionRatio;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private FileLock lock; // null이면 읽기만 한다.
+
+	private HashMap<GeoCellKey, GeoTable.Place> entries;
+	private HashMap<GeoCellKey, Long> missTimes; // 찾을 수 없었던 좌표를 기록한 시각
+	private ArrayList<String> strings;           // 파일의 문자열 번호 -> 문자열
+	private HashMap<String, Integer> stringCodes;
+	private long records;                        // 파일의 레코드 개수
+	private long deadRecords;                    // 뒤의 레코드로 대체되었거나 만료된 레코드 개수
+	private boolean rebuildNeeded;               // 파일 쓰기에 실패해 파일 끝이 온전하지 않을 수 있다. 다음 compaction에서 entries로 다시 쓴다.
+
+	private long hitCount;
+	private long missCount;
+
+	/**
+	 * constructor. 파일이 없다면 새로 만든다. 파일의 cellSize, source가 다르거나 형식이 맞지 않으면 비우고 새로 시작한다.
+	 * @param filename cache 파일 이름
+	 * @param delegate 파일에 없는 좌표를 요청할 ReverseGeocoder
+	 * @param source delegate를 나타내는 문자열. 이 값이 바뀌면(e.g. 다른 서버, 다시 만든 sample geo file) 저장된 결과를 사용하지 않는다.
+	 * @param cellSize 좌표를 양자화할 격자 칸의 크기. 0이면 좌표가 같을 때만 같은 key.
+	 * @param missTtlMillis 찾을 수 없었던 좌표를 다시 요청하기까지의 시간. (millisecond)
+	 * @param compactionRatio 유효하지 않은 레코드가 유효한 레코드의 몇 배를 넘으면 compaction 할지.
+	 * @throws IOException
+	 */
+	public PersistentGeocodeCache(String filename, ReverseGeocoder delegate, String source, double cellSize, long missTtlMillis, double compactionRatio) throws IOException {
+		this.path            = Paths.get(filename);
+		this.delegate        = delegate;
+		this.source          = (source == null) ? "" : source;
+		this.cellSize        = Math.max(cellSize, 0.0);
+		this.missTtlMillis   = missTtlMillis;
+		this.compactionRatio = compactionRatio;
+		this.hitCount        = 0;
+		this.missCount       = 0;
+
+		open();
+		if(needsCompaction()) compact();
+	}
+
+	@Override
+	public GeoTable.Place reverseGeocode(Point point) throws IOException {
+		ArrayList<Point> points = new ArrayList<Point>(1);
+		points.add(point);
+		return reverseGeocode(points).get(0);
+	}
+
+	@Override
+	public List<GeoTable.Place> reverseGeocode(List<Point> points) throws IOException {
+		ArrayList<GeoTable.Place> result = new ArrayList<GeoTable.Place>(points.size());
+		ArrayList<Integer> missIndexes   = new ArrayList<Integer>();
+		ArrayList<GeoCellKey> missKeys   = new ArrayList<GeoCellKey>();
+		ArrayList<Point> missPoints      = new ArrayList<Point>();
+
+		synchronized(this) {
+			for(int i=0;i<points.size();i++) {
+				Point point    = points.get(i);
+				GeoCellKey key = (point == null) ? null : GeoCellKey.of(point, cellSize);
+				GeoTable.Place place = (key == null) ? null : entries.get(key);
+
+				if(point != null && place == null) {
+					// 칸의 결과가 처음 요청한 좌표에 따라 달라지지 않도록, 칸의 중심으로 요청한다.
+					missIndexes.add(i);
+					missKeys.add(key);
+					missPoints.add((cellSize > 0.0) ? key.getCenter(cellSize) : point);
+				}
+				else if(point != null) {
+					hitCount++;
+				}
+				result.add((place == NOT_FOUND) ? null : place);
+			}
+			missCount += missPoints.size();
+		}
+		if(missPoints.isEmpty()) return result;
+
+		// delegate 호출은 오래 걸릴 수 있으므로 lock 밖에서 한다.
+		List<GeoTable.Place> places = delegate.reverseGeocode(missPoints);
+		for(int i=0;i<missIndexes.size();i++) result.set(missIndexes.get(i), places.get(i));
+
+		synchronized(this) {
+			append(missKeys, places);
+			if(needsCompaction()) compact();
+		}
+
+		return result;
+	}
+
+	/**
+	 * 유효하지 않은 레코드를 지우고 파일을 다시 쓴다. 새 파일을 다 쓴 후 기존 파일과 바꾸므로, 도중에 실패해도 기존 파일은 남아 있다.
+	 * @throws IOException
+	 */
+	public synchronized void compact() throws IOException {
+		if(lock == null) return;
+
+		Path temp = path.resolveSibling(path.getFileName() + ".compact");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())));
+
+		// 문자열은 사용하는 것만 새로 번호를 붙여 다시 쓴다.
+		ArrayList<String> newStrings           = new ArrayList<String>();
+		HashMap<String, Integer> newStringCodes = new HashMap<String, Integer>();
+		try {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			DataOutputStream bodyOut   = new DataOutputStream(body);
+			for(Map.Entry<GeoCellKey, GeoTable.Place> entry : entries.entrySet()) {
+				GeoCellKey key       = entry.getKey();
+				GeoTable.Place place = entry.getValue();
+
+				if(place == NOT_FOUND) writeMiss(bodyOut, key, missTimes.get(key));
+				else                   writePlace(bodyOut, key, place, Collections.<String, Integer>emptyMap(), 0, newStrings, newStringCodes);
+			}
+			bodyOut.flush();
+
+			writeHeader(out);
+			out.write(body.toByteArray());
+		}
+		finally {
+			out.close();
+		}
+
+		close();
+		try {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(AtomicMoveNotSupportedException e) {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+		open();
+	}
+
+	/**
+	 * 파일을 닫는다. compaction은 파일을 열 때와 결과를 추가할 때 필요한 경우에만 한다.
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if(channel == null) return;
+
+		if(lock != null) lock.release();
+		channel.close();
+		file.close();
+
+		lock    = null;
+		channel = null;
+		file    = null;
+	}
+
+	/**
+	 * @return cache에 있는 좌표(격자 칸)의 개수
+	 */
+	public synchronized int size() { return entries.size(); }
+
+	/**
+	 * @return cache hit, miss 개수와 파일 크기를 한 줄로 요약한 문자열
+	 */
+	public synchronized String getStatistics() {
+		return "entries: " + entries.size() + ", hits: " + hitCount + ", misses: " + missCount + ", records: " + records + " (" + deadRecords + " dead)";
+	}
+
+	/**
+	 * 파일을 열고 lock을 건 후, memory-map 해서 모든 레코드를 읽는다.
+	 */
+	private void open() throws IOException {
+		file    = new RandomAccessFile(path.toFile(), "rw");
+		channel = file.getChannel();
+		try {
+			lock = channel.tryLock();
+		}
+		catch(OverlappingFileLockException e) { // 같은 JVM에서 이미 열고 있는 경우
+			lock = null;
+		}
+
+		entries          = new HashMap<GeoCellKey, GeoTable.Place>();
+		missTimes        = new HashMap<GeoCellKey, Long>();
+		strings          = new ArrayList<String>();
+		stringCodes      = new HashMap<String, Integer>();
+		records          = 0;
+		deadRecords      = 0;
+		rebuildNeeded    = false;
+
+		long size     = channel.size();
+		long validEnd = (size >= MIN_HEADER_SIZE) ? load(size) : -1;
+
+		if(validEnd < 0) { // 비어 있거나 형식이 맞지 않는 파일
+			if(lock == null) return;
+
+			channel.truncate(0);
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			writeHeader(new DataOutputStream(header));
+			channel.write(ByteBuffer.wrap(header.toByteArray()), 0);
+			validEnd = header.size();
+		}
+		else if(validEnd < size && lock != null) { // 쓰는 도중 끊긴 레코드
+			channel.truncate(validEnd);
+		}
+
+		channel.position(validEnd);
+	}
+
+	/**
+	 * memory-map 한 파일에서 레코드들을 읽는다.
+	 * @return 마지막으로 온전하게 읽은 레코드의 끝 위치. 형식이나 header(cellSize, source)가 맞지 않으면 -1.
+	 */
+	private long load(long size) throws IOException {
+		MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+
+		if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return -1;
+		if(Double.doubleToLongBits(buffer.getDouble()) != Double.doubleToLongBits(cellSize)) return -1;
+
+		int sourceLength = buffer.getInt();
+		if(sourceLength < 0 || sourceLength > buffer.remaining()) return -1;
+		byte[] sourceBytes = new byte[sourceLength];
+		buffer.get(sourceBytes);
+		if(source.equals(new String(sourceBytes, UTF8)) == false) return -1;
+
+		long now = System.currentTimeMillis();
+		int validEnd = buffer.position();
+		try {
+			while(buffer.hasRemaining()) {
+				byte type = buffer.get();
+				if(type == RECORD_STRING) {
+					byte[] bytes = new byte[buffer.getInt()];
+					buffer.get(bytes);
+
+					String string = new String(bytes, UTF8);
+					stringCodes.put(string, strings.size());
+					strings.add(string);
+				}
+				else if(type == RECORD_PLACE) {
+					GeoCellKey key = new GeoCellKey(buffer.getLong(), buffer.getLong());
+					double x       = buffer.getDouble();
+					double y       = buffer.getDouble();
+					String acFirst  = decode(buffer.getInt());
+					String acSecond = decode(buffer.getInt());
+					String country  = decode(buffer.getInt());
+
+					put(key, new GeoTable.Place(x, y, acFirst, acSecond, country), 0);
+				}
+				else if(type == RECORD_MISS) {
+					GeoCellKey key = new GeoCellKey(buffer.getLong(), buffer.getLong());
+					long time      = buffer.getLong();
+
+					if(now - time < missTtlMillis) put(key, NOT_FOUND, time);
+					else                          deadRecords++;
+				}
+				else {
+					break; // 알 수 없는 레코드. 이후는 버린다.
+				}
+
+				records++;
+				validEnd = buffer.position();
+			}
+		}
+		catch(RuntimeException e) { // 끊긴 레코드 (BufferUnderflowException), 잘못된 문자열 번호 등
+		}
+
+		return validEnd;
+	}
+
+	/**
+	 * 파일에서 읽거나 새로 추가한 레코드를 entries에 반영한다. 이미 있는 key라면 이전 레코드는 유효하지 않게 된다.
+	 */
+	private void put(GeoCellKey key, GeoTable.Place place, long missTime) {
+		if(entries.put(key, place) != null) deadRecords++;
+
+		if(place == NOT_FOUND) missTimes.put(key, missTime);
+		else                   missTimes.remove(key);
+	}
+
+	/**
+	 * delegate에서 받은 결과를 entries에 넣고 파일 끝에 추가한다. 다른 스레드가 먼저 추가한 key는 건너뛴다.
+	 * 새 문자열은 파일에 쓴 후에 strings, stringCodes에 등록하므로, 쓰기에 실패해도 파일에 없는 문자열 번호를 사용하지 않는다.
+	 * 쓰기에 실패하면 파일 끝이 온전하지 않을 수 있으므로 더 이상 추가하지 않고, 다음 compaction에서 entries로 파일을 다시 쓴다.
+	 */
+	private void append(List<GeoCellKey> keys, List<GeoTable.Place> places) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out        = new DataOutputStream(bytes);
+		long now = System.currentTimeMillis();
+
+		ArrayList<String> newStrings      = new ArrayList<String>();
+		HashMap<String, Integer> newCodes = new HashMap<String, Integer>();
+		long newRecords = 0;
+
+		for(int i=0;i<keys.size();i++) {
+			GeoCellKey key = keys.get(i);
+			if(entries.containsKey(key)) continue;
+
+			GeoTable.Place place = places.get(i);
+			if(place == null) {
+				put(key, NOT_FOUND, now);
+				writeMiss(out, key, now);
+			}
+			else {
+				put(key, place, 0);
+				newRecords += writePlace(out, key, place, stringCodes, strings.size(), newStrings, newCodes);
+			}
+			newRecords++;
+		}
+		out.flush();
+
+		if(lock == null || rebuildNeeded || bytes.size() == 0) return;
+
+		try {
+			channel.write(ByteBuffer.wrap(bytes.toByteArray()));
+		}
+		catch(IOException e) {
+			rebuildNeeded = true;
+			throw e;
+		}
+
+		for(String value : newStrings) {
+			stringCodes.put(value, strings.size());
+			strings.add(value);
+		}
+		records += newRecords;
+	}
+
+	private boolean needsCompaction() {
+		if(lock == null) return false;
+		return rebuildNeeded || (deadRecords > 0 && deadRecords > compactionRatio * entries.size());
+	}
+
+	private String decode(int code) {
+		return (code < 0) ? null : strings.get(code);
+	}
+
+	private void writeHeader(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeDouble(cellSize);
+
+		byte[] sourceBytes = source.getBytes(UTF8);
+		out.writeInt(sourceBytes.length);
+		out.write(sourceBytes);
+		out.flush();
+	}
+
+	private void writeMiss(DataOutputStream out, GeoCellKey key, long time) throws IOException {
+		out.writeByte(RECORD_MISS);
+		out.writeLong(key.getX());
+		out.writeLong(key.getY());
+		out.writeLong(time);
+	}
+
+	/**
+	 * place 레코드를 쓴다. codes, newCodes에 없는 문자열은 RECORD_STRING 레코드로 먼저 쓰고 newStrings, newCodes에 등록한다.
+	 * @param codes 이미 파일에 있는 문자열의 번호
+	 * @param base codes에 있는 문자열 개수. 새 문자열은 base + newStrings의 순서로 번호가 붙는다.
+	 * @return 새로 쓴 RECORD_STRING 레코드 개수
+	 */
+	private int writePlace(DataOutputStream out, GeoCellKey key, GeoTable.Place place, Map<String, Integer> codes, int base, List<String> newStrings, Map<String, Integer> newCodes) throws IOException {
+		int written = 0;
+		int[] code  = new int[3];
+		String[] values = {place.getAcFirst(), place.getAcSecond(), place.getCountry()};
+
+		for(int k=0;k<values.length;k++) {
+			if(values[k] == null) {
+				code[k] = -1;
+				continue;
+			}
+
+			Integer existing = codes.get(values[k]);
+			if(existing == null) existing = newCodes.get(values[k]);
+			if(existing == null) {
+				byte[] bytes = values[k].getBytes(UTF8);
+				out.writeByte(RECORD_STRING);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+
+				existing = base + newStrings.size();
+				newCodes.put(values[k], existing);
+				newStrings.add(values[k]);
+				written++;
+			}
+			code[k] = existing;
+		}
+
+		out.writeByte(RECORD_PLACE);
+		out.writeLong(key.getX());
+		out.writeLong(key.getY());
+		out.writeDouble(place.getX());
+		out.writeDouble(place.getY());
+		out.writeInt(code[0]);
+		out.writeInt(code[1]);
+		out.writeInt(code[2]);
+
+		return written;
+	}
+}
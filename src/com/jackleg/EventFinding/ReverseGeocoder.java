@@ -0,0 +1,27 @@
+package com.jackleg.EventFinding;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 좌표로 지명 정보(나라, 첫 번째/두 번째 address component)를 구하는 reverse-geocoding 인터페이스.
+ * 실제 서비스에서는 원격 API 호출이므로, 여러 좌표를 한 번의 요청으로 보내는 batch 호출을 함께 제공한다.
+ * 구현체는 여러 스레드에서 동시에 호출할 수 있어야 한다.
+ */
+public interface ReverseGeocoder {
+	/**
+	 * 좌표 하나의 지명 정보를 구한다.
+	 * @param point 지명을 구할 좌표
+	 * @return 좌표의 지명 정보. 찾을 수 없거나 point가 null이면 null.
+	 * @throws IOException 요청에 실패한 경우
+	 */
+	public GeoTable.Place reverseGeocode(Point point) throws IOException;
+
+	/**
+	 * 여러 좌표의 지명 정보를 한 번에 구한다.
+	 * @param points 지명을 구할 좌표들. null인 원소가 있을 수 있다.
+	 * @return points와 같은 순서의 지명 정보 리스트. 찾을 수 없는 좌표는 null.
+	 * @throws IOException 요청에 실패한 경우
+	 */
+	public List<GeoTable.Place> reverseGeocode(List<Point> points) throws IOException;
+}
@@ -0,0 +1,234 @@
+package com.jackleg.EventFinding;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.jackleg.EventFinding.EfUtility.Quantiles;
+
+/**
+ * 값을 저장하지 않고 quantile을 근사하기 위한 클래스. P² 알고리즘(Jain & Chlamtac, 1985)을 사용한다.
+ * 25%, 50%, 75% quantile마다 5개의 marker만 유지하므로, 데이터 개수와 관계없이 메모리는 일정하다.
+ * min, max는 정확한 값이며, 값이 5개 이하인 동안에는 EfUtility.calculateQuantiles()와 같은 값을 반환한다.
+ * 데이터가 매우 많아 배열로 모두 가지고 있기 어려운 경우(e.g. 포인트 수가 많은 사용자의 K-distance)에 사용한다.
+ * main()은 EfUtility.calculateQuantiles()와 결과를 비교하는 확인용 프로그램이다.
+ */
+public class StreamingQuantiles {
+	private static final int MARKERS = 5;
+
+	private P2Estimator q1;
+	private P2Estimator q2;
+	private P2Estimator q3;
+
+	private double[] initial; // 처음 5개의 값
+	private long count;
+	private double min;
+	private double max;
+
+	/**
+	 * constructor.
+	 */
+	public StreamingQuantiles() {
+		this.q1      = new P2Estimator(0.25);
+		this.q2      = new P2Estimator(0.5);
+		this.q3      = new P2Estimator(0.75);
+		this.initial = new double[MARKERS];
+		this.count   = 0;
+		this.min     = Double.NaN;
+		this.max     = Double.NaN;
+	}
+
+	/**
+	 * @return 지금까지 추가된 값의 개수
+	 */
+	public long getCount() { return count; }
+
+	/**
+	 * 값을 추가한다.
+	 * @param value 추가할 값. NaN이면 무시한다.
+	 */
+	public void add(double value) {
+		if(Double.isNaN(value)) return;
+
+		if(count == 0 || value < min) min = value;
+		if(count == 0 || value > max) max = value;
+
+		if(count < MARKERS) {
+			initial[(int)count] = value;
+			count++;
+			if(count == MARKERS) {
+				Arrays.sort(initial);
+				q1.init(initial);
+				q2.init(initial);
+				q3.init(initial);
+			}
+			return;
+		}
+
+		q1.add(value);
+		q2.add(value);
+		q3.add(value);
+		count++;
+	}
+
+	/**
+	 * @return 지금까지 추가된 값들의 quantile 근사값. 값이 2개 미만이면 null.
+	 */
+	public Quantiles getQuantiles() {
+		if(count < 2) return null;
+		if(count <= MARKERS) return EfUtility.calculateQuantiles(Arrays.copyOf(initial, (int)count)); // P² marker는 6번째 값부터 움직인다.
+
+		Quantiles result = new Quantiles();
+		result.min = min;
+		result.q1  = q1.estimate();
+		result.q2  = q2.estimate();
+		result.q3  = q3.estimate();
+		result.max = max;
+
+		return result;
+	}
+
+	/**
+	 * EfUtility.calculateQuantiles()와 결과를 비교한다. 값이 5개 이하라면 같아야 하고, 많다면 허용 오차 안이어야 한다.
+	 * 다르면 내용을 출력하고 1로 종료한다.
+	 * @param args [large n] [tolerance]. 허용 오차는 (max - min)에 대한 비율이며, 기본값은 100000개, 0.02.
+	 */
+	public static void main(String[] args) {
+		int largeCount   = (args.length >= 1) ? Integer.parseInt(args[0]) : 100000;
+		double tolerance = (args.length >= 2) ? Double.parseDouble(args[1]) : 0.02;
+
+		Random random = new Random(1);
+		int failures  = 0;
+
+		// 값이 5개 이하: 같은 값이어야 한다. 정렬되지 않은 순서와 중복 값도 확인한다.
+		for(int n=2;n<=MARKERS;n++) {
+			for(int trial=0;trial<1000;trial++) {
+				double[] data = new double[n];
+				for(int i=0;i<n;i++) data[i] = (trial % 2 == 0) ? random.nextInt(4) : random.nextDouble();
+				if(check(data, 0.0) == false) failures++;
+			}
+		}
+		double[] sequence = { 1, 2, 3, 4, 5 };
+		if(check(sequence, 0.0) == false) failures++;
+
+		// 값이 많을 때: 근사값이 허용 오차 안이어야 한다.
+		double[] uniform = new double[largeCount];
+		double[] normal  = new double[largeCount];
+		for(int i=0;i<largeCount;i++) {
+			uniform[i] = random.nextDouble();
+			normal[i]  = random.nextGaussian();
+		}
+		if(check(uniform, tolerance) == false) failures++;
+		if(check(normal, tolerance) == false) failures++;
+
+		System.err.println("streaming quantiles check: " + ((failures == 0) ? "ok" : failures + " failed"));
+		if(failures > 0) System.exit(1);
+	}
+
+	/**
+	 * data를 StreamingQuantiles와 EfUtility.calculateQuantiles()로 각각 구해 비교한다.
+	 * @param tolerance 허용 오차. (max - min)에 대한 비율. 0이면 같은 값이어야 한다.
+	 */
+	private static boolean check(double[] data, double tolerance) {
+		StreamingQuantiles streaming = new StreamingQuantiles();
+		for(double value : data) streaming.add(value);
+
+		Quantiles actual   = streaming.getQuantiles();
+		Quantiles expected = EfUtility.calculateQuantiles(Arrays.copyOf(data, data.length));
+		double limit       = tolerance * (expected.max - expected.min);
+
+		boolean ok = actual.min == expected.min && actual.max == expected.max
+			&& Math.abs(actual.q1 - expected.q1) <= limit
+			&& Math.abs(actual.q2 - expected.q2) <= limit
+			&& Math.abs(actual.q3 - expected.q3) <= limit;
+		if(ok == false) {
+			System.err.println("n: " + data.length
+				+ ", expected " + expected.q1 + " " + expected.q2 + " " + expected.q3
+				+ ", actual " + actual.q1 + " " + actual.q2 + " " + actual.q3);
+		}
+		return ok;
+	}
+
+	/**
+	 * quantile p 하나를 근사하는 P² estimator.
+	 * 5개의 marker(최소, p/2, p, (1+p)/2, 최대 위치)의 높이와 위치를 유지하며, 가운데 marker의 높이가 p quantile의 근사값이다.
+	 */
+	private static class P2Estimator {
+		private double[] heights   = new double[MARKERS];
+		private double[] positions = new double[MARKERS]; // 실제 위치. 1부터 시작한다.
+		private double[] desired   = new double[MARKERS]; // 원하는 위치
+		private double[] increment = new double[MARKERS]; // 값이 하나 추가될 때 원하는 위치의 증가량
+
+		private P2Estimator(double p) {
+			increment[0] = 0.0;
+			increment[1] = p / 2.0;
+			increment[2] = p;
+			increment[3] = (1.0 + p) / 2.0;
+			increment[4] = 1.0;
+
+			for(int i=0;i<MARKERS;i++) desired[i] = 1.0 + 4.0 * increment[i];
+		}
+
+		/**
+		 * 정렬된 처음 5개의 값으로 marker를 초기화한다.
+		 */
+		private void init(double[] sorted) {
+			for(int i=0;i<MARKERS;i++) {
+				heights[i]   = sorted[i];
+				positions[i] = i + 1;
+			}
+		}
+
+		private void add(double value) {
+			// 값이 들어갈 구간 k를 찾는다. 양 끝 marker보다 바깥이면 끝 marker를 옮긴다.
+			int k;
+			if(value < heights[0]) {
+				heights[0] = value;
+				k = 0;
+			}
+			else if(value >= heights[MARKERS-1]) {
+				heights[MARKERS-1] = value;
+				k = MARKERS - 2;
+			}
+			else {
+				k = 0;
+				while(value >= heights[k+1]) k++;
+			}
+
+			for(int i=k+1;i<MARKERS;i++) positions[i] += 1.0;
+			for(int i=0;i<MARKERS;i++) desired[i] += increment[i];
+
+			// 가운데 marker들이 원하는 위치에서 1 이상 벗어났다면 한 칸씩 옮기고, 높이를 보간한다.
+			for(int i=1;i<MARKERS-1;i++) {
+				double d = desired[i] - positions[i];
+				if((d >= 1.0 && positions[i+1] - positions[i] > 1.0) || (d <= -1.0 && positions[i-1] - positions[i] < -1.0)) {
+					int sign = (d > 0) ? 1 : -1;
+
+					double height = parabolic(i, sign);
+					if(heights[i-1] < height && height < heights[i+1]) heights[i] = height;
+					else                                               heights[i] = linear(i, sign);
+
+					positions[i] += sign;
+				}
+			}
+		}
+
+		private double parabolic(int i, int sign) {
+			double np = positions[i+1];
+			double n  = positions[i];
+			double nm = positions[i-1];
+
+			return heights[i] + sign / (np - nm) * (
+				(n - nm + sign) * (heights[i+1] - heights[i]) / (np - n) +
+				(np - n - sign) * (heights[i] - heights[i-1]) / (n - nm)
+			);
+		}
+
+		private double linear(int i, int sign) {
+			return heights[i] + sign * (heights[i+sign] - heights[i]) / (positions[i+sign] - positions[i]);
+		}
+
+		private double estimate() {
+			return heights[2];
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.jackleg.EventFinding;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 문자열과 int code를 서로 변환하기 위한 dictionary.
+ * 나라, 주소처럼 종류가 많지 않은 문자열을 code로 바꾸어 저장하고, 같은지 여부를 int 비교로 판단하기 위해 사용한다.
+ * 같은 문자열은 dictionary에 하나만 저장되므로, 이미지마다 같은 문자열 객체를 따로 가지고 있을 필요가 없다.
+ * code는 처음 등록된 순서대로 0부터 부여되며, null 문자열의 code는 NONE이다. 여러 스레드에서 동시에 사용할 수 있다.
+ */
+public class StringDictionary {
+	public static final int NONE = -1;
+
+	// 데이터 전체에서 나라, 주소 정보에 사용하는 dictionary.
+	private static final StringDictionary global = new StringDictionary();
+
+	private ConcurrentHashMap<String, Integer> codes;
+	private volatile String[] strings;
+	private int size;
+
+	/**
+	 * @return 데이터 전체에서 나라, 주소 정보에 사용하는 dictionary.
+	 */
+	public static StringDictionary getGlobal() { return global; }
+
+	/**
+	 * constructor.
+	 */
+	public StringDictionary() {
+		this.codes   = new ConcurrentHashMap<String, Integer>();
+		this.strings = new String[16];
+		this.size    = 0;
+	}
+
+	/**
+	 * @return 등록된 문자열의 개수
+	 */
+	public synchronized int size() { return size; }
+
+	/**
+	 * 문자열의 code를 반환한다. 등록되지 않은 문자열이면 새로 등록한다.
+	 * @param string code를 구할 문자열
+	 * @return 문자열의 code. string이 null이면 NONE.
+	 */
+	public int encode(String string) {
+		if(string == null) return NONE;
+
+		// 대부분은 이미 등록된 문자열이므로 lock 없이 먼저 찾아 본다.
+		Integer code = codes.get(string);
+		if(code != null) return code;
+
+		synchronized(this) {
+			code = codes.get(string);
+			if(code != null) return code;
+
+			// 배열에 먼저 저장한 후 map에 등록해야, map에서 code를 얻은 스레드가 decode()로 문자열을 읽을 수 있다.
+			if(size == strings.length) strings = Arrays.copyOf(strings, size * 2);
+			strings[size] = string;
+			code = size++;
+			codes.put(string, code);
+		}
+
+		return code;
+	}
+
+	/**
+	 * 문자열의 code를 반환한다. 등록하지는 않는다.
+	 * @param string code를 구할 문자열
+	 * @return 문자열의 code. string이 null이거나 등록되지 않은 문자열이면 NONE.
+	 */
+	public int lookup(String string) {
+		if(string == null) return NONE;
+
+		Integer code = codes.get(string);
+		return (code == null) ? NONE : code;
+	}
+
+	/**
+	 * code에 해당하는 문자열을 반환한다.
+	 * @param code 문자열의 code
+	 * @return code에 해당하는 문자열. code가 NONE이면 null.
+	 */
+	public String decode(int code) {
+		if(code == NONE) return null;
+		return strings[code];
+	}
+}